@@ -0,0 +1,230 @@
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+// ConcurrentRandomizedQueue is a thread-safe variant of RandomizedQueue.
+// Items are striped across a fixed number of shards, each one a small
+// resizing array guarded by its own lock, so that threads working on
+// different shards never contend with each other.
+//
+// Enqueue places the item to the calling thread's home shard. Dequeue counts
+// the non-empty shards, draws one of them uniformly, waits for its lock, and
+// removes a uniformly random item from it. If the shard was emptied in the
+// meantime, it draws again.
+//
+// Uniformity: within a shard, every item is equally likely to be dequeued.
+// Across shards, each non-empty shard is chosen with equal probability, so
+// an item in shard i is returned with probability 1 / (s * size(i)), where
+// s is the number of non-empty shards. When shards are balanced, e.g.
+// enqueues are spread evenly over threads, this equals the 1 / size() of
+// RandomizedQueue. In the worst case, an item is at most max(size(i)) /
+// min(size(i)) times more or less likely to be chosen than uniformly.
+//
+// size() and isEmpty() are weakly consistent: they reflect shard sizes at
+// some point during the call, and may be stale by the time they return.
+// Iteration is not supported, as there is no consistent snapshot to iterate.
+public final class ConcurrentRandomizedQueue<Item> {
+    private final Shard[] shards;
+    private final int mask;
+
+    // Shard is one stripe of the queue, with the same array doubling and
+    // halving policy as RandomizedQueue.
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private Object[] items = new Object[2];
+        // volatile, so that empty shards can be skipped without locking
+        private volatile int size;
+
+        void add(Object item) {
+            if (items.length == size) {
+                resize(2 * items.length);
+            }
+            items[size] = item;
+            size++;
+        }
+
+        Object removeRandom(ThreadLocalRandom random) {
+            int lastIndex = size - 1;
+            int randIndex = random.nextInt(size);
+            Object item = items[randIndex];
+            items[randIndex] = items[lastIndex];
+            items[lastIndex] = null;
+            size = lastIndex;
+            if (items.length > 2 && 4 * size <= items.length) {
+                resize(items.length / 2);
+            }
+            return item;
+        }
+
+        Object sample(ThreadLocalRandom random) {
+            return items[random.nextInt(size)];
+        }
+
+        private void resize(int newCapacity) {
+            Object[] newItems = new Object[newCapacity];
+            System.arraycopy(items, 0, newItems, 0, size);
+            items = newItems;
+        }
+    }
+
+    // Uses one shard per available processor.
+    public ConcurrentRandomizedQueue() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    // Number of shards is rounded up to the next power of two.
+    public ConcurrentRandomizedQueue(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException();
+        }
+        int n = Integer.highestOneBit(shardCount);
+        if (n < shardCount) {
+            n *= 2;
+        }
+        shards = new Shard[n];
+        for (int i = 0; i < n; i++) {
+            shards[i] = new Shard();
+        }
+        mask = n - 1;
+    }
+
+    public boolean isEmpty() {
+        for (Shard shard : shards) {
+            if (shard.size != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        int total = 0;
+        for (Shard shard : shards) {
+            total += shard.size;
+        }
+        return total;
+    }
+
+    public void enqueue(final Item item) {
+        if (item == null) {
+            throw new IllegalArgumentException();
+        }
+        int home = homeShard();
+        // Prefer home shard, but don't wait for it if another shard is free
+        for (int i = 0; i <= mask; i++) {
+            Shard shard = shards[(home + i) & mask];
+            if (shard.lock.tryLock()) {
+                try {
+                    shard.add(item);
+                } finally {
+                    shard.lock.unlock();
+                }
+                return;
+            }
+        }
+        Shard shard = shards[home];
+        shard.lock.lock();
+        try {
+            shard.add(item);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    public Item dequeue() {
+        Object item = take(true);
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+        return item(item);
+    }
+
+    // Returns a random item, without removing it
+    public Item sample() {
+        Object item = take(false);
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+        return item(item);
+    }
+
+    // Only items passed to enqueue() are stored in shards
+    @SuppressWarnings("unchecked")
+    private Item item(Object item) {
+        return (Item) item;
+    }
+
+    // Draws a shard uniformly among the non-empty ones, and takes an item
+    // from it. Draws again if the shard was emptied before it was locked.
+    // Returns null if every shard was seen empty.
+    private Object take(boolean remove) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            int nonEmpty = 0;
+            for (Shard shard : shards) {
+                if (shard.size != 0) {
+                    nonEmpty++;
+                }
+            }
+            if (nonEmpty == 0) {
+                return null;
+            }
+            int pick = random.nextInt(nonEmpty);
+            Shard chosen = null;
+            for (Shard shard : shards) {
+                if (shard.size != 0 && pick-- == 0) {
+                    chosen = shard;
+                    break;
+                }
+            }
+            // shards were emptied while counting
+            if (chosen == null) {
+                continue;
+            }
+            chosen.lock.lock();
+            try {
+                if (chosen.size != 0) {
+                    if (remove) {
+                        return chosen.removeRandom(random);
+                    }
+                    return chosen.sample(random);
+                }
+            } finally {
+                chosen.lock.unlock();
+            }
+        }
+    }
+
+    // Each thread sticks to one shard, which keeps its enqueues cache local
+    private int homeShard() {
+        int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        return (h >>> 16) & mask;
+    }
+
+    public static void main(final String[] args) throws InterruptedException {
+        final ConcurrentRandomizedQueue<Integer> rq =
+            new ConcurrentRandomizedQueue<Integer>();
+        final int perThread = 100000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * perThread;
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        rq.enqueue(offset + i);
+                        if (i % 2 == 1) {
+                            rq.dequeue();
+                        }
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        System.out.println("size: " + rq.size()
+            + " (expected " + threads * perThread / 2 + ")");
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import edu.princeton.cs.algs4.StdRandom;
+
+// ExternalShuffle permutes input that doesn't fit in memory.
+//
+// In one streaming pass, every token is appended to a uniformly random bucket
+// file on disk. Each bucket is then shuffled in memory, and buckets are
+// concatenated. If every token picks its bucket independently, and every
+// bucket is shuffled uniformly, the concatenation is a uniform random
+// permutation of the input (Rao, 1961). The first k tokens of it are thus
+// distributed like k dequeues from a RandomizedQueue.
+//
+// Buckets are shuffled in parallel, one per core, and written out in order.
+// A bucket of more than MAX_BUCKET_TOKENS tokens, e.g. from streamed input
+// of unknown size, is not loaded but shuffled the same way again, through
+// buckets of its own. Heap use is thus bounded by the number of cores times
+// MAX_BUCKET_TOKENS packed token offsets; bucket contents themselves are
+// memory-mapped.
+final class ExternalShuffle {
+    // Target size of one bucket, when input size is known
+    private static final long BUCKET_BYTES = 64L << 20;
+    private static final int DEFAULT_BUCKETS = 256;
+    // Most tokens shuffled in memory at once, and buckets a larger bucket is
+    // split into
+    private static final int MAX_BUCKET_TOKENS = 1 << 22;
+    private static final int SPLIT_BUCKETS = 16;
+    private static final int BUCKET_BUFFER_SIZE = 1 << 15;
+
+    private ExternalShuffle() { }
+
+    // Writes k tokens of a random permutation of input to out. Bucket count
+    // is derived from input size if buckets is not positive.
+    static void shuffle(final TokenReader in, final int k, int buckets,
+            final ByteBuffer buffer, final WritableByteChannel out)
+            throws IOException {
+        if (k < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (write(in, k, buckets, buffer, out) < k) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    // Writes up to k tokens of a random permutation of input to out.
+    // Returns the number of tokens written.
+    private static int write(final TokenReader in, final int k, int buckets,
+            final ByteBuffer buffer, final WritableByteChannel out)
+            throws IOException {
+        if (buckets <= 0) {
+            long length = in.length();
+            if (length < 0) {
+                buckets = DEFAULT_BUCKETS;
+            } else {
+                buckets = (int) Math.max(1, length / BUCKET_BYTES + 1);
+            }
+        }
+        File dir = Files.createTempDirectory("permutation").toFile();
+        File[] files = new File[buckets];
+        try {
+            scatter(in, dir, files);
+            return gather(files, k, buffer, out);
+        } finally {
+            for (File file : files) {
+                if (file != null) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    // Appends every token to a random bucket, one token per line
+    private static void scatter(final TokenReader in, final File dir,
+            final File[] files) throws IOException {
+        int buckets = files.length;
+        FileChannel[] channels = new FileChannel[buckets];
+        ByteBuffer[] buffers = new ByteBuffer[buckets];
+        try {
+            for (int i = 0; i < buckets; i++) {
+                files[i] = new File(dir, "bucket" + i);
+                channels[i] = new RandomAccessFile(files[i], "rw")
+                    .getChannel();
+                buffers[i] = ByteBuffer.allocateDirect(BUCKET_BUFFER_SIZE);
+            }
+            if (in.isRandomAccess()) {
+                for (long t = in.nextToken(); t != -1; t = in.nextToken()) {
+                    int b = StdRandom.uniform(buckets);
+                    in.write(t, buffers[b], channels[b]);
+                    TokenReader.newline(buffers[b], channels[b]);
+                }
+            } else {
+                for (String s = in.next(); s != null; s = in.next()) {
+                    int b = StdRandom.uniform(buckets);
+                    TokenReader.write(s.getBytes(StandardCharsets.UTF_8),
+                        buffers[b], channels[b]);
+                    TokenReader.newline(buffers[b], channels[b]);
+                }
+            }
+            for (int i = 0; i < buckets; i++) {
+                TokenReader.flush(buffers[i], channels[i]);
+            }
+        } finally {
+            for (FileChannel channel : channels) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    // Shuffled bucket, waiting to be written out, or a bucket too large to
+    // load, with null tokens and channel
+    private static final class Bucket {
+        private final File file;
+        private final TokenReader reader;
+        private final long[] tokens;
+        private final FileChannel channel;
+
+        Bucket(File file, TokenReader reader, long[] tokens,
+                FileChannel channel) {
+            this.file = file;
+            this.reader = reader;
+            this.tokens = tokens;
+            this.channel = channel;
+        }
+    }
+
+    // Shuffles buckets in parallel, and writes them out in order until k
+    // tokens have been written. Returns the number of tokens written.
+    private static int gather(final File[] files, final int k,
+            final ByteBuffer buffer, final WritableByteChannel out)
+            throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Bucket>> pending =
+            new ArrayList<Future<Bucket>>(files.length);
+        int written = 0;
+        try {
+            // Keep at most one bucket per thread in memory ahead of output
+            int submitted = 0;
+            for (int i = 0; i < files.length && written < k; i++) {
+                while (submitted < files.length && submitted <= i + threads) {
+                    final File file = files[submitted++];
+                    pending.add(pool.submit(new Callable<Bucket>() {
+                        public Bucket call() throws IOException {
+                            return load(file);
+                        }
+                    }));
+                }
+                Bucket bucket = pending.get(i).get();
+                pending.set(i, null);
+                if (bucket == null) {
+                    continue;
+                }
+                if (bucket.tokens == null) {
+                    written += split(bucket.file, k - written, buffer, out);
+                    continue;
+                }
+                try {
+                    for (long t : bucket.tokens) {
+                        if (written == k) {
+                            break;
+                        }
+                        bucket.reader.write(t, buffer, out);
+                        TokenReader.newline(buffer, out);
+                        written++;
+                    }
+                } finally {
+                    bucket.channel.close();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            closeUnused(pool, pending);
+        }
+        return written;
+    }
+
+    // Stops the pool, and closes buckets that were shuffled ahead, but not
+    // needed for output. Loads still queued are cancelled, and running ones
+    // are waited for, so that no channel is left open.
+    private static void closeUnused(final ExecutorService pool,
+            final List<Future<Bucket>> pending) throws IOException {
+        pool.shutdown();
+        for (Future<Bucket> future : pending) {
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                continue;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Future<Bucket> future : pending) {
+            if (future == null || !future.isDone() || future.isCancelled()) {
+                continue;
+            }
+            try {
+                Bucket bucket = future.get();
+                if (bucket != null && bucket.channel != null) {
+                    bucket.channel.close();
+                }
+            } catch (InterruptedException | ExecutionException
+                    | CancellationException e) {
+                continue;
+            }
+        }
+    }
+
+    // Shuffles a bucket too large to load through buckets of its own, and
+    // writes up to k of its tokens. Returns the number written.
+    private static int split(final File file, final int k,
+            final ByteBuffer buffer, final WritableByteChannel out)
+            throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            return write(new TokenReader(channel), k, SPLIT_BUCKETS, buffer,
+                out);
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Maps and shuffles one bucket. Returns null for an empty bucket, and a
+    // bucket without tokens if it has more than MAX_BUCKET_TOKENS.
+    private static Bucket load(final File file) throws IOException {
+        if (file.length() == 0) {
+            return null;
+        }
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        long[] tokens;
+        TokenReader reader;
+        try {
+            reader = new TokenReader(channel);
+            tokens = reader.tokens(MAX_BUCKET_TOKENS);
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (tokens == null) {
+            channel.close();
+            return new Bucket(file, null, null, null);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = tokens.length - 1; i > 0; i--) {
+            int r = random.nextInt(i + 1);
+            long t = tokens[r];
+            tokens[r] = tokens[i];
+            tokens[i] = t;
+        }
+        return new Bucket(file, reader, tokens, channel);
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.NoSuchElementException;
+import edu.princeton.cs.algs4.StdRandom;
+
+// IntRandomizedQueue is a RandomizedQueue for int values, backed by an int
+// array instead of boxed objects.
+//
+// Capacity can be set up front, grown with ensureCapacity(), and released
+// with trimToSize(). Array is halved when it gets 1 / shrinkFactor full,
+// which is 1/4 by default like in RandomizedQueue. A larger factor widens
+// the gap between growing and shrinking, so that alternating enqueue and
+// dequeue at a power-of-two boundary doesn't resize every time.
+public final class IntRandomizedQueue {
+    private static final int DEFAULT_CAPACITY = 2;
+    private static final int DEFAULT_SHRINK_FACTOR = 4;
+
+    private int[] queue;
+    private int size;
+    private final int minCapacity;
+    private final int shrinkFactor;
+
+    public IntRandomizedQueue() {
+        this(DEFAULT_CAPACITY, DEFAULT_SHRINK_FACTOR);
+    }
+
+    public IntRandomizedQueue(final int initialCapacity) {
+        this(initialCapacity, DEFAULT_SHRINK_FACTOR);
+    }
+
+    // Queue never shrinks below initialCapacity. shrinkFactor must be at
+    // least 4, so that a halved array is still at most half full.
+    public IntRandomizedQueue(final int initialCapacity,
+            final int shrinkFactor) {
+        if (initialCapacity < 1 || shrinkFactor < 4) {
+            throw new IllegalArgumentException();
+        }
+        queue = new int[initialCapacity];
+        minCapacity = initialCapacity;
+        this.shrinkFactor = shrinkFactor;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return queue.length;
+    }
+
+    public void enqueue(final int item) {
+        if (queue.length == size) {
+            resizeQueue(2 * queue.length);
+        }
+        queue[size++] = item;
+    }
+
+    public int dequeue() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        int randIndex = StdRandom.uniform(size);
+        int item = queue[randIndex];
+        queue[randIndex] = queue[--size];
+        if (queue.length > minCapacity
+                && (long) shrinkFactor * size <= queue.length) {
+            resizeQueue(Math.max(minCapacity, queue.length / 2));
+        }
+        return item;
+    }
+
+    public int sample() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return queue[StdRandom.uniform(size)];
+    }
+
+    // Grows the array, so that it holds at least capacity items
+    public void ensureCapacity(final int capacity) {
+        if (capacity > queue.length) {
+            resizeQueue(capacity);
+        }
+    }
+
+    // Shrinks the array to the current size
+    public void trimToSize() {
+        if (queue.length > size) {
+            resizeQueue(Math.max(1, size));
+        }
+    }
+
+    private void resizeQueue(final int newCapacity) {
+        int[] newQueue = new int[newCapacity];
+        System.arraycopy(queue, 0, newQueue, 0, size);
+        queue = newQueue;
+    }
+
+    public static void main(final String[] args) {
+        IntRandomizedQueue rq = new IntRandomizedQueue(4, 8);
+        for (int i = 1; i <= 10; i++) {
+            rq.enqueue(i);
+        }
+        System.out.println("size: " + rq.size()
+            + ", capacity: " + rq.capacity());
+        rq.trimToSize();
+        System.out.println("trimToSize, capacity: " + rq.capacity());
+        rq.ensureCapacity(100);
+        System.out.println("ensureCapacity(100), capacity: "
+            + rq.capacity());
+        while (!rq.isEmpty()) {
+            System.out.println(rq.dequeue());
+        }
+        System.out.println("capacity: " + rq.capacity());
+    }
+}
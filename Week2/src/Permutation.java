@@ -1,25 +1,135 @@
-import edu.princeton.cs.algs4.StdIn;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import edu.princeton.cs.algs4.StdRandom;
 
 // Client class for RandomizedQueue
+//
+// Default mode reads all tokens to a RandomizedQueue, and dequeues k of them.
+// Reservoir mode streams the input, and keeps only a reservoir of k tokens,
+// so memory is O(k) regardless of input size. External mode shuffles input
+// through bucket files on disk, for when k is close to N and N tokens don't
+// fit in memory. Output distribution is the same in every mode: every
+// ordered selection of k tokens is equally likely.
+//
+// Input is tokenized by TokenReader. When standard input is redirected from
+// a file, default mode keeps only packed token offsets to the mapped file,
+// and copies the chosen tokens straight to output. Tokens are counted in a
+// first pass over the mapped file, so the queue is allocated once at its
+// final size.
 public final class Permutation {
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
 
     private Permutation() { }
 
-    public static void main(final String[] args) {
+    public static void main(final String[] args) throws IOException {
         if (args.length == 0) {
-            System.out.println("Usage: <number of permutations> < <file.txt> \n"
+            System.out.println("Usage: <number of permutations>"
+                + " [reservoir | external [buckets]] < <file.txt> \n"
                 + "Example: 5 < distinct.txt \n"
                 + "% where distinct.txt contains\n"
                 + "% 1 2 3 4 5 6 7 8 9 10");
             return;
         }
         int n = Integer.parseInt(args[0]);
-        RandomizedQueue<String> rq = new RandomizedQueue<String>();
-        while (!StdIn.isEmpty()) {
-            rq.enqueue(StdIn.readString());
+        FileChannel channel =
+            new FileInputStream(FileDescriptor.in).getChannel();
+        TokenReader in = new TokenReader(channel);
+        WritableByteChannel out =
+            new FileOutputStream(FileDescriptor.out).getChannel();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+
+        String mode = args.length > 1 ? args[1] : "";
+        if (mode.equals("reservoir")) {
+            for (String s : reservoir(in, n)) {
+                print(s, buffer, out);
+            }
+        } else if (mode.equals("external")) {
+            int buckets = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+            ExternalShuffle.shuffle(in, n, buckets, buffer, out);
+        } else if (in.isRandomAccess()) {
+            // mapping doesn't move the channel, so this reads the same input
+            long count = new TokenReader(channel).count();
+            if (n > count) {
+                throw new NoSuchElementException();
+            }
+            if (count > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too many tokens");
+            }
+            LongRandomizedQueue rq =
+                new LongRandomizedQueue((int) Math.max(1, count));
+            for (long t = in.nextToken(); t != -1; t = in.nextToken()) {
+                rq.enqueue(t);
+            }
+            for (int i = 0; i < n; i++) {
+                in.write(rq.dequeue(), buffer, out);
+                TokenReader.newline(buffer, out);
+            }
+        } else {
+            RandomizedQueue<String> rq = new RandomizedQueue<String>();
+            for (String s = in.next(); s != null; s = in.next()) {
+                rq.enqueue(s);
+            }
+            for (int i = 0; i < n; i++) {
+                print(rq.dequeue(), buffer, out);
+            }
+        }
+        TokenReader.flush(buffer, out);
+    }
+
+    static void print(final String s, final ByteBuffer buffer,
+            final WritableByteChannel out) throws IOException {
+        TokenReader.write(s.getBytes(StandardCharsets.UTF_8), buffer, out);
+        TokenReader.newline(buffer, out);
+    }
+
+    // Reservoir sampling with Li's Algorithm L. Instead of drawing a random
+    // number for every token, it draws the length of the gap until the next
+    // replacement, and skips over the gap without decoding tokens. Expected
+    // number of decoded tokens is O(k (1 + log(N / k))).
+    // Returned tokens are in random order.
+    private static String[] reservoir(final TokenReader in, final int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException();
+        }
+        String[] sample = new String[k];
+        for (int i = 0; i < k; i++) {
+            sample[i] = in.next();
+            if (sample[i] == null) {
+                throw new NoSuchElementException();
+            }
+        }
+        if (k == 0) {
+            return sample;
         }
-        for (int i = 0; i < n; i++) {
-            System.out.println(rq.dequeue());
+        double w = Math.exp(Math.log(random()) / k);
+        while (true) {
+            double gap = Math.floor(Math.log(random()) / Math.log1p(-w));
+            // NaN or huge gaps mean that the reservoir will not change again
+            long skip = gap < Long.MAX_VALUE ? (long) gap : Long.MAX_VALUE;
+            if (!in.skip(skip)) {
+                break;
+            }
+            String token = in.next();
+            if (token == null) {
+                break;
+            }
+            sample[StdRandom.uniform(k)] = token;
+            w *= Math.exp(Math.log(random()) / k);
         }
+        // Reservoir is a uniform subset, shuffle makes it a uniform sequence
+        StdRandom.shuffle(sample);
+        return sample;
+    }
+
+    // Uniform random number in (0, 1], safe for logarithm
+    private static double random() {
+        return 1.0 - StdRandom.uniform();
     }
 }
@@ -83,6 +83,60 @@ public final class RandomizedQueue<Item> implements Iterable<Item> {
         return queue[randIndex];
     }
 
+    // Dequeues k random items into out[0..k-1], with one partial
+    // Fisher-Yates pass over the tail of the queue. Queue is shrunk at most
+    // once per batch.
+    public void dequeue(final int k, final Item[] out) {
+        checkBatch(k, out);
+        for (int i = 0; i < k; i++) {
+            int lastIndex = size - 1 - i;
+            int randIndex = StdRandom.uniform(lastIndex + 1);
+            out[i] = queue[randIndex];
+            queue[randIndex] = queue[lastIndex];
+            queue[lastIndex] = null;
+        }
+        size -= k;
+        int newCapacity = capacity;
+        while (newCapacity > 2 && 4 * size <= newCapacity) {
+            newCapacity /= 2;
+        }
+        if (newCapacity != capacity) {
+            resizeQueue(newCapacity);
+        }
+    }
+
+    // Samples k distinct random items into out[0..k-1], without removing
+    // them. Items are drawn like in dequeue(k, out), and the swaps are then
+    // undone, so that open iterators are not affected.
+    public void sample(final int k, final Item[] out) {
+        checkBatch(k, out);
+        int[] swaps = new int[k];
+        for (int i = 0; i < k; i++) {
+            int lastIndex = size - 1 - i;
+            int randIndex = StdRandom.uniform(lastIndex + 1);
+            swaps[i] = randIndex;
+            Item item = queue[randIndex];
+            queue[randIndex] = queue[lastIndex];
+            queue[lastIndex] = item;
+            out[i] = item;
+        }
+        for (int i = k - 1; i >= 0; i--) {
+            int lastIndex = size - 1 - i;
+            Item item = queue[swaps[i]];
+            queue[swaps[i]] = queue[lastIndex];
+            queue[lastIndex] = item;
+        }
+    }
+
+    private void checkBatch(final int k, final Item[] out) {
+        if (out == null || k < 0 || k > out.length) {
+            throw new IllegalArgumentException();
+        }
+        if (k > size) {
+            throw new NoSuchElementException();
+        }
+    }
+
     private class RandomizedQueueIterator<Item> implements Iterator {
         private int[] randOrder;
         private int current;
@@ -133,5 +187,11 @@ public final class RandomizedQueue<Item> implements Iterable<Item> {
             System.out.println(it.next());
         }
         System.out.println("size: " + rq.size());
+        Integer[] batch = new Integer[3];
+        rq.sample(3, batch);
+        System.out.println("sample(3): " + java.util.Arrays.toString(batch));
+        rq.dequeue(3, batch);
+        System.out.println("dequeue(3): " + java.util.Arrays.toString(batch));
+        System.out.println("size: " + rq.size());
     }
 }
@@ -0,0 +1,280 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// TokenReader splits input to whitespace separated tokens at byte level,
+// without regular expressions. Only ASCII whitespace separates tokens.
+//
+// If input is a regular file, it is memory-mapped in 1GB segments, and
+// tokens can be read as packed offsets instead of Strings. A packed token
+// holds the offset of its first byte in the upper 40 bits, and its length in
+// the lower 24 bits, so tokens can be written out later straight from the
+// mapped file, without ever decoding them. Other input, e.g. a pipe, is
+// streamed through a direct buffer, and only Strings are available.
+final class TokenReader {
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+    private static final int LENGTH_BITS = 24;
+    private static final int MAX_LENGTH = (1 << LENGTH_BITS) - 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+    // Mapped input, or null if input is streamed
+    private final MappedByteBuffer[] segments;
+    private int segment;
+    // Current window to input, and its offset from the start of input
+    private ByteBuffer window;
+    private long base;
+    private byte[] token = new byte[64];
+
+    TokenReader(final InputStream in) {
+        this(Channels.newChannel(in));
+    }
+
+    TokenReader(final ReadableByteChannel channel) {
+        this.channel = channel;
+        segments = map(channel);
+        if (segments != null) {
+            window = segments[0];
+        } else {
+            window = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            window.limit(0);
+        }
+    }
+
+    // Maps the rest of input, if it is a regular file. Returns null otherwise.
+    private static MappedByteBuffer[] map(final ReadableByteChannel channel) {
+        if (!(channel instanceof FileChannel)) {
+            return null;
+        }
+        FileChannel file = (FileChannel) channel;
+        try {
+            long start = file.position();
+            long length = file.size() - start;
+            // Pipes report zero size, so empty files are streamed as well
+            if (length <= 0) {
+                return null;
+            }
+            int count = (int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS);
+            MappedByteBuffer[] mapped = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long offset = (long) i << SEGMENT_BITS;
+                long size = Math.min(SEGMENT_MASK + 1, length - offset);
+                mapped[i] = file.map(FileChannel.MapMode.READ_ONLY,
+                    start + offset, size);
+            }
+            return mapped;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Can tokens be read as packed offsets?
+    boolean isRandomAccess() {
+        return segments != null;
+    }
+
+    // Length of mapped input in bytes, or -1 if input is streamed
+    long length() {
+        if (segments == null) {
+            return -1;
+        }
+        long length = 0;
+        for (MappedByteBuffer mapped : segments) {
+            length += mapped.capacity();
+        }
+        return length;
+    }
+
+    // Next token, or null at end of input
+    String next() {
+        if (!skipWhitespace()) {
+            return null;
+        }
+        int length = 0;
+        while (window.hasRemaining() || fill()) {
+            byte b = window.get();
+            if (isWhitespace(b)) {
+                break;
+            }
+            if (length == token.length) {
+                token = Arrays.copyOf(token, 2 * length);
+            }
+            token[length++] = b;
+        }
+        return new String(token, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Next token packed as offset and length, or -1 at end of input.
+    // Only for random access input.
+    long nextToken() {
+        if (!skipWhitespace()) {
+            return -1;
+        }
+        long offset = position();
+        skipToken();
+        long length = position() - offset;
+        if (length > MAX_LENGTH) {
+            throw new IllegalStateException("Token too long at " + offset);
+        }
+        return offset << LENGTH_BITS | length;
+    }
+
+    // Reads all remaining tokens as packed offsets, or returns null if there
+    // are more than max. Only for random access input.
+    long[] tokens(final int max) {
+        long[] tokens = new long[1024];
+        int size = 0;
+        for (long t = nextToken(); t != -1; t = nextToken()) {
+            if (size == max) {
+                return null;
+            }
+            if (size == tokens.length) {
+                tokens = Arrays.copyOf(tokens, 2 * size);
+            }
+            tokens[size++] = t;
+        }
+        return Arrays.copyOf(tokens, size);
+    }
+
+    // Number of remaining tokens, which are skipped
+    long count() {
+        long count = 0;
+        while (skipWhitespace()) {
+            skipToken();
+            count++;
+        }
+        return count;
+    }
+
+    // Skips n tokens. Returns false, if input ended before that.
+    boolean skip(final long n) {
+        for (long i = 0; i < n; i++) {
+            if (!skipWhitespace()) {
+                return false;
+            }
+            skipToken();
+        }
+        return true;
+    }
+
+    // Copies bytes of a packed token to out, and writes out to channel
+    // whenever it gets full. Only for random access input.
+    void write(final long packed, final ByteBuffer out,
+            final WritableByteChannel channel) throws IOException {
+        long offset = packed >>> LENGTH_BITS;
+        int length = (int) (packed & MAX_LENGTH);
+        while (length > 0) {
+            if (!out.hasRemaining()) {
+                flush(out, channel);
+            }
+            ByteBuffer src = segments[(int) (offset >>> SEGMENT_BITS)]
+                .duplicate();
+            int index = (int) (offset & SEGMENT_MASK);
+            int n = Math.min(length,
+                Math.min(out.remaining(), src.limit() - index));
+            src.position(index);
+            src.limit(index + n);
+            out.put(src);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    // Copies bytes to out, and writes out to channel whenever it gets full
+    static void write(final byte[] bytes, final ByteBuffer out,
+            final WritableByteChannel channel) throws IOException {
+        for (int offset = 0; offset < bytes.length;) {
+            if (!out.hasRemaining()) {
+                flush(out, channel);
+            }
+            int n = Math.min(out.remaining(), bytes.length - offset);
+            out.put(bytes, offset, n);
+            offset += n;
+        }
+    }
+
+    // Appends a line break to out, writing out to channel if it is full
+    static void newline(final ByteBuffer out,
+            final WritableByteChannel channel) throws IOException {
+        if (!out.hasRemaining()) {
+            flush(out, channel);
+        }
+        out.put((byte) '\n');
+    }
+
+    // Writes all of out to channel, and clears it
+    static void flush(final ByteBuffer out, final WritableByteChannel channel)
+            throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private long position() {
+        return base + window.position();
+    }
+
+    // Returns false at end of input
+    private boolean skipWhitespace() {
+        while (window.hasRemaining() || fill()) {
+            if (!isWhitespace(window.get(window.position()))) {
+                return true;
+            }
+            window.position(window.position() + 1);
+        }
+        return false;
+    }
+
+    // Advances past the token at current position
+    private void skipToken() {
+        while (window.hasRemaining() || fill()) {
+            int p = window.position();
+            int limit = window.limit();
+            while (p < limit && !isWhitespace(window.get(p))) {
+                p++;
+            }
+            window.position(p);
+            if (p < limit) {
+                return;
+            }
+        }
+    }
+
+    // Moves window forward. Returns false at end of input.
+    private boolean fill() {
+        base += window.limit();
+        if (segments != null) {
+            if (segment + 1 >= segments.length) {
+                base -= window.limit();
+                return false;
+            }
+            window = segments[++segment];
+            return true;
+        }
+        window.clear();
+        int read;
+        try {
+            do {
+                read = channel.read(window);
+            } while (read == 0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        window.flip();
+        return read > 0;
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || (b >= '\t' && b <= '\r');
+    }
+}
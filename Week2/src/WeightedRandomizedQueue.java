@@ -0,0 +1,262 @@
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+import edu.princeton.cs.algs4.StdRandom;
+
+// WeightedRandomizedQueue is a RandomizedQueue, where dequeue() and sample()
+// return an item with probability proportional to its weight. Weights must
+// be positive, and can be changed while the item is in the queue. Items must
+// be distinct, as they are used as keys for weight updates.
+//
+// Items are kept in a resizing array like in RandomizedQueue, and weights in
+// a Fenwick tree (binary indexed tree) over the same indices. Prefix sums of
+// the tree are used to locate the item for a random point in [0, total
+// weight), so every operation takes O(log n), amortized over resizes.
+//
+// For a set of items that doesn't change, aliasTable() builds a snapshot
+// that samples in constant time.
+public final class WeightedRandomizedQueue<Item> {
+    private Item[] queue;
+    private double[] weights;
+    // Fenwick tree, 1-indexed: tree[i] holds the sum of weights in
+    // (i - lowbit(i), i]
+    private double[] tree;
+    private HashMap<Item, Integer> positions;
+    private int size;
+    private int capacity;
+
+    public WeightedRandomizedQueue() {
+        capacity = 2;
+        size = 0;
+        queue = (Item[]) new Object[capacity];
+        weights = new double[capacity];
+        tree = new double[capacity + 1];
+        positions = new HashMap<Item, Integer>();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void enqueue(final Item item, final double weight) {
+        if (item == null || positions.containsKey(item)) {
+            throw new IllegalArgumentException();
+        }
+        checkWeight(weight);
+        if (capacity == size) {
+            resizeQueue(2 * capacity);
+        }
+        queue[size] = item;
+        positions.put(item, size);
+        add(size, weight);
+        size++;
+    }
+
+    public double weight(final Item item) {
+        return weights[indexOf(item)];
+    }
+
+    public void setWeight(final Item item, final double weight) {
+        checkWeight(weight);
+        int index = indexOf(item);
+        add(index, weight - weights[index]);
+    }
+
+    public Item dequeue() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        int randIndex = randomIndex();
+        int lastIndex = size - 1;
+        Item item = queue[randIndex];
+        positions.remove(item);
+        add(randIndex, -weights[randIndex]);
+        if (randIndex != lastIndex) {
+            double lastWeight = weights[lastIndex];
+            add(lastIndex, -lastWeight);
+            queue[randIndex] = queue[lastIndex];
+            positions.put(queue[randIndex], randIndex);
+            add(randIndex, lastWeight);
+        }
+        queue[lastIndex] = null;
+        size--;
+        if (capacity > 2 && 4 * size <= capacity) {
+            resizeQueue(capacity / 2);
+        }
+        return item;
+    }
+
+    public Item sample() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return queue[randomIndex()];
+    }
+
+    // Snapshot of current items and weights, for constant time sampling
+    public AliasTable<Item> aliasTable() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return new AliasTable<Item>(queue, weights, size);
+    }
+
+    // Walker's alias method, as constructed by Vose. Each slot i holds
+    // probability prob[i] for item i, and the remaining probability for
+    // item alias[i], so a sample takes one uniform index and one coin flip.
+    public static final class AliasTable<Item> {
+        private final Item[] items;
+        private final double[] prob;
+        private final int[] alias;
+
+        private AliasTable(Item[] source, double[] weights, int n) {
+            items = (Item[]) new Object[n];
+            prob = new double[n];
+            alias = new int[n];
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                items[i] = source[i];
+                total += weights[i];
+            }
+            double[] scaled = new double[n];
+            int[] small = new int[n];
+            int[] large = new int[n];
+            int smallSize = 0, largeSize = 0;
+            for (int i = 0; i < n; i++) {
+                scaled[i] = weights[i] * n / total;
+                if (scaled[i] < 1) {
+                    small[smallSize++] = i;
+                } else {
+                    large[largeSize++] = i;
+                }
+            }
+            while (smallSize > 0 && largeSize > 0) {
+                int s = small[--smallSize];
+                int l = large[--largeSize];
+                prob[s] = scaled[s];
+                alias[s] = l;
+                scaled[l] = (scaled[l] + scaled[s]) - 1;
+                if (scaled[l] < 1) {
+                    small[smallSize++] = l;
+                } else {
+                    large[largeSize++] = l;
+                }
+            }
+            // Leftovers are 1 up to rounding error
+            while (largeSize > 0) {
+                prob[large[--largeSize]] = 1;
+            }
+            while (smallSize > 0) {
+                prob[small[--smallSize]] = 1;
+            }
+        }
+
+        public int size() {
+            return items.length;
+        }
+
+        public Item sample() {
+            int i = StdRandom.uniform(items.length);
+            if (StdRandom.uniform() < prob[i]) {
+                return items[i];
+            }
+            return items[alias[i]];
+        }
+    }
+
+    private void checkWeight(final double weight) {
+        if (!(weight > 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    private int indexOf(final Item item) {
+        if (item == null) {
+            throw new IllegalArgumentException();
+        }
+        Integer index = positions.get(item);
+        if (index == null) {
+            throw new NoSuchElementException();
+        }
+        return index;
+    }
+
+    // Adds delta to weight at index, and to every tree node covering it
+    private void add(final int index, final double delta) {
+        weights[index] += delta;
+        for (int i = index + 1; i <= capacity; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // Finds the index whose weight interval contains a uniformly random
+    // point, by descending the tree from the highest power of two.
+    private int randomIndex() {
+        double total = 0;
+        for (int i = size; i > 0; i -= i & -i) {
+            total += tree[i];
+        }
+        double point = StdRandom.uniform() * total;
+        int index = 0;
+        for (int step = Integer.highestOneBit(capacity); step > 0; step >>= 1) {
+            int next = index + step;
+            if (next <= capacity && tree[next] <= point) {
+                index = next;
+                point -= tree[next];
+            }
+        }
+        // Rounding error may push the point past the last item
+        if (index >= size) {
+            index = size - 1;
+        }
+        return index;
+    }
+
+    // Resizes arrays, and rebuilds the tree in linear time. Rebuilding also
+    // clears rounding error accumulated by weight updates.
+    private void resizeQueue(final int newCapacity) {
+        Item[] newQueue = (Item[]) new Object[newCapacity];
+        double[] newWeights = new double[newCapacity];
+        System.arraycopy(queue, 0, newQueue, 0, size);
+        System.arraycopy(weights, 0, newWeights, 0, size);
+        double[] newTree = new double[newCapacity + 1];
+        for (int i = 1; i <= newCapacity; i++) {
+            newTree[i] += newWeights[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= newCapacity) {
+                newTree[parent] += newTree[i];
+            }
+        }
+        capacity = newCapacity;
+        queue = newQueue;
+        weights = newWeights;
+        tree = newTree;
+    }
+
+    public static void main(final String[] args) {
+        WeightedRandomizedQueue<String> wq =
+            new WeightedRandomizedQueue<String>();
+        wq.enqueue("a", 1);
+        wq.enqueue("b", 2);
+        wq.enqueue("c", 7);
+        int[] counts = new int[3];
+        AliasTable<String> alias = wq.aliasTable();
+        int[] aliasCounts = new int[3];
+        for (int i = 0; i < 10000; i++) {
+            counts[wq.sample().charAt(0) - 'a']++;
+            aliasCounts[alias.sample().charAt(0) - 'a']++;
+        }
+        System.out.println("sample a:b:c ~ 1:2:7 -> " + counts[0] + ":"
+            + counts[1] + ":" + counts[2]);
+        System.out.println("alias  a:b:c ~ 1:2:7 -> " + aliasCounts[0] + ":"
+            + aliasCounts[1] + ":" + aliasCounts[2]);
+        wq.setWeight("c", 0.5);
+        System.out.println("weight(c) -> " + wq.weight("c"));
+        while (!wq.isEmpty()) {
+            System.out.println(wq.dequeue());
+        }
+    }
+}
@@ -0,0 +1,243 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.princeton.cs.algs4.StdOut;
+
+// BatchSolver solves many puzzle files in one process. Files are solved
+// concurrently on a fixed pool of threads, which share one heuristic, so
+// pattern databases are mapped once for the whole batch.
+//
+// Solutions are remembered in a results cache file, so that a board seen in
+// an earlier run, or earlier in this one, is answered without search. The
+// cache is keyed by canonical board: a board and its transpose, mirrored
+// along the main diagonal with tiles renamed to match, have the same goal
+// and mirrored solutions, so both are stored under the smaller key.
+//
+// A solution is stored as the moves of the empty slot, one letter each of
+// U, D, L and R, or - for a solved board. Each line of the cache file is
+// "<dimension> <key in hex> <moves>". New results are appended as they are
+// found.
+//
+// Output is one line per puzzle file, in input order: the file, the number
+// of moves and the moves, or "unsolvable".
+//
+// Usage: BatchSolver <directory | manifest.txt> <cache file>
+//        [heuristic] [mode] [threads]
+//
+// A directory is solved file by file, for its .txt files. A manifest lists
+// one puzzle file per line, relative to the manifest.
+public final class BatchSolver {
+    private static final String MOVES = "UDLR";
+    private static final String NO_MOVES = "-";
+
+    private final Heuristic heuristic;
+    private final Solver.Mode mode;
+    private final ConcurrentHashMap<String, String> cache =
+        new ConcurrentHashMap<String, String>();
+    private final BufferedWriter cacheWriter;
+
+    public BatchSolver(File cacheFile, Heuristic heuristic, Solver.Mode mode)
+            throws IOException {
+        if (heuristic == null || mode == null) {
+            throw new IllegalArgumentException();
+        }
+        // cached solutions must be shortest
+        if (!mode.isOptimal()) {
+            throw new IllegalArgumentException("Mode " + mode
+                + " doesn't find shortest solutions");
+        }
+        this.heuristic = heuristic;
+        this.mode = mode;
+        if (cacheFile.exists()) {
+            load(cacheFile);
+        }
+        cacheWriter = new BufferedWriter(new FileWriter(cacheFile, true));
+    }
+
+    private void load(File cacheFile) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(cacheFile));
+        try {
+            for (String line = reader.readLine(); line != null;
+                    line = reader.readLine()) {
+                String[] parts = line.trim().split(" ");
+                // skip a line cut short by an interrupted run
+                if (parts.length == 3) {
+                    cache.put(parts[0] + " " + parts[1], parts[2]);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    // Moves of the empty slot in a shortest solution of board, as letters
+    // U, D, L and R, or null if board is unsolvable
+    public String solve(Board board) throws IOException {
+        if (!Solver.isSolvable(board)) {
+            return null;
+        }
+        Board transposed = transpose(board);
+        boolean isCanonical = board.key() <= transposed.key();
+        Board canonical = isCanonical ? board : transposed;
+        String key = canonical.dimension() + " "
+            + Long.toHexString(canonical.key());
+        String moves = cache.get(key);
+        if (moves == null) {
+            moves = new Solver(canonical, heuristic, mode).path().toString();
+            if (moves.isEmpty()) {
+                moves = NO_MOVES;
+            }
+            if (cache.putIfAbsent(key, moves) == null) {
+                append(key, moves);
+            }
+        }
+        if (moves.equals(NO_MOVES)) {
+            return "";
+        }
+        if (isCanonical) {
+            return moves;
+        }
+        return transposeMoves(moves);
+    }
+
+    private void append(String key, String moves) throws IOException {
+        synchronized (cacheWriter) {
+            cacheWriter.write(key + " " + moves);
+            cacheWriter.newLine();
+            cacheWriter.flush();
+        }
+    }
+
+    public void close() throws IOException {
+        cacheWriter.close();
+    }
+
+    // Board mirrored along the main diagonal. Tile with goal (i, j) is
+    // renamed to the tile with goal (j, i), so the goal mirrors to itself.
+    static Board transpose(Board board) {
+        int n = board.dimension();
+        int[][] blocks = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                int val = board.tile(i * n + j);
+                if (val != 0) {
+                    int goal = val - 1;
+                    val = (goal % n) * n + goal / n + 1;
+                }
+                blocks[j][i] = val;
+            }
+        }
+        return new Board(blocks);
+    }
+
+    // Moves mirrored along the main diagonal: up and left swap, as do down
+    // and right
+    private static String transposeMoves(String moves) {
+        char[] chars = moves.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            int move = MOVES.indexOf(chars[i]);
+            chars[i] = MOVES.charAt(move ^ 2);
+        }
+        return new String(chars);
+    }
+
+    // Puzzle files of a directory or a manifest
+    static List<File> puzzleFiles(File source) throws IOException {
+        List<File> files = new ArrayList<File>();
+        if (source.isDirectory()) {
+            File[] listed = source.listFiles();
+            if (listed == null) {
+                throw new IOException("Cannot list " + source);
+            }
+            Arrays.sort(listed);
+            for (File file : listed) {
+                if (file.isFile() && file.getName().endsWith(".txt")) {
+                    files.add(file);
+                }
+            }
+            return files;
+        }
+        File dir = source.getAbsoluteFile().getParentFile();
+        BufferedReader reader = new BufferedReader(new FileReader(source));
+        try {
+            for (String line = reader.readLine(); line != null;
+                    line = reader.readLine()) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                File file = new File(line);
+                files.add(file.isAbsolute() ? file : new File(dir, line));
+            }
+        } finally {
+            reader.close();
+        }
+        return files;
+    }
+
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: <directory | manifest.txt> <cache file>"
+                + " [heuristic] [mode] [threads]");
+            return;
+        }
+        List<File> files = puzzleFiles(new File(args[0]));
+        Heuristic heuristic = Heuristic.MANHATTAN;
+        if (args.length > 2) {
+            heuristic = Solver.heuristic(args[2]);
+        }
+        Solver.Mode mode = Solver.Mode.ASTAR;
+        if (args.length > 3) {
+            mode = Solver.mode(args[3]);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 4) {
+            threads = Integer.parseInt(args[4]);
+        }
+
+        final BatchSolver batch = new BatchSolver(new File(args[1]),
+            heuristic, mode);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (final File file : files) {
+                results.add(pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        Board board = Solver.readBoard(file.getPath());
+                        String moves = batch.solve(board);
+                        if (moves == null) {
+                            return file + " unsolvable";
+                        }
+                        if (moves.isEmpty()) {
+                            return file + " 0 " + NO_MOVES;
+                        }
+                        return file + " " + moves.length() + " " + moves;
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                StdOut.println(result.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+            batch.close();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.princeton.cs.algs4.StdOut;
+
+// Benchmark measures Board operations and Solver runs over a corpus of
+// puzzles, so that changes to the search can be compared on equal footing.
+//
+// The corpus is in Week4/puzzles. Files are named puzzle<n>x<n>-<moves>.txt,
+// with an optional letter, graded by the length of their shortest solution,
+// which optimal modes are checked against.
+//
+// Every benchmark first runs for WARMUP_ITERATIONS iterations, so the JIT
+// has compiled it, then for MEASURED_ITERATIONS, of about iterationMillis
+// each. Board benchmarks report mean and deviation of time per operation,
+// over the measured iterations. Results are folded into a sink, so the JIT
+// can't drop the work. Solver benchmarks report mean time per solve, bytes
+// allocated per solve, boards expanded and boards expanded per second.
+//
+// Allocation is counted for the measuring thread, so it leaves out the
+// worker threads of Mode.PARALLEL, and it is -1 on JVMs that don't count it.
+//
+// Usage: Benchmark <directory> [heuristic] [mode] [iteration milliseconds]
+public final class Benchmark {
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long DEFAULT_ITERATION_MILLIS = 500;
+    // Operations between clock reads
+    private static final int BATCH_SIZE = 1 << 10;
+
+    private final long iterationNanos;
+    private final Board[] boards;
+    // Equal to boards, but not the same objects
+    private final Board[] copies;
+    private long sink;
+
+    // Operation on a board, returning anything derived from its result
+    private interface Operation {
+        long run(Board board, Board copy);
+    }
+
+    private Benchmark(Board[] boards, Board[] copies, long iterationMillis) {
+        this.boards = boards;
+        this.copies = copies;
+        iterationNanos = iterationMillis * 1000000L;
+    }
+
+    // Times operation over the corpus, and prints ns per operation
+    private void measure(String name, Operation operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(operation);
+        }
+        double[] nanos = new double[MEASURED_ITERATIONS];
+        long before = allocatedBytes();
+        long operations = 0;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long[] result = iteration(operation);
+            nanos[i] = (double) result[0] / result[1];
+            operations += result[1];
+        }
+        double bytes = -1;
+        if (before >= 0) {
+            bytes = (double) (allocatedBytes() - before) / operations;
+        }
+        StdOut.printf("%-10s %10.1f ns/op  +- %6.1f  %8.1f B/op%n", name,
+            mean(nanos), deviation(nanos), bytes);
+    }
+
+    // Runs operation in batches for about an iteration. Returns elapsed
+    // nanoseconds and number of operations.
+    private long[] iteration(Operation operation) {
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        int next = 0;
+        do {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                sink += operation.run(boards[next], copies[next]);
+                next = next + 1 == boards.length ? 0 : next + 1;
+            }
+            operations += BATCH_SIZE;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        return new long[] {elapsed, operations};
+    }
+
+    // Solves board over and over for about an iteration, and prints mean
+    // time, allocation and work per solve
+    private void solve(String name, Board board, int expected,
+            Heuristic heuristic, Solver.Mode mode) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            solveFor(board, heuristic, mode);
+        }
+        long nanos = 0;
+        long bytes = 0;
+        long solves = 0;
+        SolverStats stats = null;
+        Solver solver = null;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long before = allocatedBytes();
+            long start = System.nanoTime();
+            long count = 0;
+            do {
+                stats = new SolverStats();
+                solver = new Solver(board, heuristic, mode, stats);
+                count++;
+            } while (System.nanoTime() - start < iterationNanos);
+            nanos += System.nanoTime() - start;
+            bytes += allocatedBytes() - before;
+            solves += count;
+        }
+        long bytesPerSolve = -1;
+        if (allocatedBytes() >= 0) {
+            bytesPerSolve = bytes / solves;
+        }
+        String check = "";
+        if (mode.isOptimal() && expected >= 0
+                && solver.moves() != expected) {
+            check = "  expected " + expected;
+        }
+        StdOut.printf("%-20s %3d moves %10.3f ms %12d B %10d expanded"
+            + " %12.0f nodes/s%s%n", name, solver.moves(),
+            nanos / 1e6 / solves, bytesPerSolve,
+            stats.expanded(), stats.nodesPerSecond(), check);
+    }
+
+    private void solveFor(Board board, Heuristic heuristic,
+            Solver.Mode mode) {
+        long start = System.nanoTime();
+        do {
+            new Solver(board, heuristic, mode);
+        } while (System.nanoTime() - start < iterationNanos);
+    }
+
+    // Bytes allocated by this thread so far, or -1 if not counted
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean sunBean =
+            (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return sunBean.getThreadAllocatedBytes(
+            Thread.currentThread().getId());
+    }
+
+    private static double mean(double[] a) {
+        double sum = 0;
+        for (double x : a) {
+            sum += x;
+        }
+        return sum / a.length;
+    }
+
+    private static double deviation(double[] a) {
+        double mean = mean(a);
+        double sum = 0;
+        for (double x : a) {
+            sum += (x - mean) * (x - mean);
+        }
+        return Math.sqrt(sum / (a.length - 1));
+    }
+
+    // Shortest solution length from a corpus file name, or -1
+    private static int expectedMoves(String name) {
+        int dash = name.lastIndexOf('-');
+        int end = dash + 1;
+        while (end < name.length() && Character.isDigit(name.charAt(end))) {
+            end++;
+        }
+        if (dash < 0 || end == dash + 1) {
+            return -1;
+        }
+        return Integer.parseInt(name.substring(dash + 1, end));
+    }
+
+    public static void main(String[] args) throws Exception {
+        File[] files = new File(args[0]).listFiles();
+        if (files == null) {
+            throw new IllegalArgumentException("Not a directory: " + args[0]);
+        }
+        Arrays.sort(files);
+        Heuristic heuristic = new LinearConflict();
+        if (args.length > 1) {
+            heuristic = Solver.heuristic(args[1]);
+        }
+        Solver.Mode mode = Solver.Mode.ASTAR;
+        if (args.length > 2) {
+            mode = Solver.mode(args[2]);
+        }
+        long iterationMillis = DEFAULT_ITERATION_MILLIS;
+        if (args.length > 3) {
+            iterationMillis = Long.parseLong(args[3]);
+        }
+
+        List<File> puzzles = new ArrayList<File>();
+        for (File file : files) {
+            if (file.getName().endsWith(".txt")) {
+                puzzles.add(file);
+            }
+        }
+        Board[] boards = new Board[puzzles.size()];
+        Board[] copies = new Board[puzzles.size()];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = Solver.readBoard(puzzles.get(i).getPath());
+            copies[i] = Solver.readBoard(puzzles.get(i).getPath());
+        }
+        Benchmark benchmark = new Benchmark(boards, copies, iterationMillis);
+
+        benchmark.measure("manhattan", new Operation() {
+            @Override
+            public long run(Board board, Board copy) {
+                return board.manhattan();
+            }
+        });
+        benchmark.measure("hamming", new Operation() {
+            @Override
+            public long run(Board board, Board copy) {
+                return board.hamming();
+            }
+        });
+        benchmark.measure("neighbors", new Operation() {
+            @Override
+            public long run(Board board, Board copy) {
+                long sum = 0;
+                for (Board neighbor : board.neighbors()) {
+                    sum += neighbor.manhattan();
+                }
+                return sum;
+            }
+        });
+        benchmark.measure("twin", new Operation() {
+            @Override
+            public long run(Board board, Board copy) {
+                return board.twin().hamming();
+            }
+        });
+        benchmark.measure("equals", new Operation() {
+            @Override
+            public long run(Board board, Board copy) {
+                return board.equals(copy) ? 1 : 0;
+            }
+        });
+        StdOut.println();
+
+        for (int i = 0; i < boards.length; i++) {
+            String name = puzzles.get(i).getName();
+            benchmark.solve(name, boards[i], expectedMoves(name), heuristic,
+                mode);
+        }
+        // keep the sink alive
+        if (benchmark.sink == 42) {
+            StdOut.println();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import java.util.HashMap;
+import java.util.function.ToIntFunction;
+
+// BidirectionalSearch is front-to-end bidirectional A*. One search runs
+// forward from the initial board to the goal, the other backward from the
+// goal to the initial board. Moves are reversible, so the backward search
+// uses the same neighbors. Each step expands the direction with the smaller
+// open list.
+//
+// Whenever a search reaches a board the other search has also reached, the
+// two paths join into a solution, and the shortest one so far is kept as
+// the incumbent. Every solution not yet found passes through an open board
+// of each search, so it is at least as long as the smallest priority of
+// either open list. Search stops when the incumbent is no longer than the
+// larger of the two, and the incumbent is then a shortest solution. Its two
+// halves are then traced back through the boards each search reached.
+//
+// The backward search needs estimates of the distance to the initial board.
+// Tiles are relabeled so that the initial board reads as the goal, tile i + 1
+// being the one at index i, and the relabeled board is estimated instead.
+// Heuristics ignore the empty slot, so this is as admissible as the forward
+// estimate. Unless the initial empty slot is in the goal corner, the tile in
+// that corner gets label n^2, which only Manhattan distance and linear
+// conflict read correctly, so the backward search then uses LinearConflict.
+final class BidirectionalSearch {
+    private final Heuristic heuristic;
+    private final Heuristic backwardHeuristic;
+    private final SolverStats stats;
+    private final Board initial;
+    // relabel[v] is i + 1, for tile v at index i of the initial board
+    private final int[] relabel;
+
+    private final Direction forward;
+    private final Direction backward;
+    // Shortest solution so far, as the nodes where the searches met
+    private int bound = Integer.MAX_VALUE;
+    private Node meetForward;
+    private Node meetBackward;
+
+    private static final class Node {
+        final Board board;
+        final int moves;
+        final int estimate;
+
+        Node(Board board, int moves, int estimate) {
+            this.board = board;
+            this.moves = moves;
+            this.estimate = estimate;
+        }
+    }
+
+    // Open list and reached boards of one search
+    private final class Direction {
+        final boolean isForward;
+        final BucketQueue<Node> open = new BucketQueue<Node>();
+        final HashMap<Board, Node> reached = new HashMap<Board, Node>();
+
+        Direction(boolean isForward) {
+            this.isForward = isForward;
+        }
+
+        int estimate(Board board) {
+            if (isForward) {
+                return stats.estimate(heuristic, board);
+            }
+            return stats.estimate(backwardHeuristic,
+                new Relabeled(board, relabel));
+        }
+
+        void add(Node node, Direction other) {
+            reached.put(node.board, node);
+            open.insert(node, node.moves + node.estimate, node.estimate);
+            Node met = other.reached.get(node.board);
+            if (met != null && node.moves + met.moves < bound) {
+                bound = node.moves + met.moves;
+                meetForward = isForward ? node : met;
+                meetBackward = isForward ? met : node;
+            }
+        }
+
+        // Moves from the start of this search to a reached board
+        MoveList backtrack(Board board) {
+            return MoveList.backtrack(board, new ToIntFunction<Board>() {
+                @Override
+                public int applyAsInt(Board b) {
+                    Node node = reached.get(b);
+                    return node == null ? -1 : node.moves;
+                }
+            });
+        }
+
+        // Expands the best open board, skipping boards since reached with
+        // fewer moves
+        void expand(Direction other) {
+            Node node = open.delMin();
+            if (reached.get(node.board) != node) {
+                return;
+            }
+            stats.countExpanded();
+            int moves = node.moves + 1;
+            for (Board neighbor : node.board.neighbors()) {
+                stats.countGenerated();
+                Node known = reached.get(neighbor);
+                if (known != null && known.moves <= moves) {
+                    stats.countDuplicate();
+                    continue;
+                }
+                add(new Node(neighbor, moves, estimate(neighbor)), other);
+            }
+            stats.open(forward.open.size() + backward.open.size());
+            stats.closed(forward.reached.size() + backward.reached.size());
+        }
+    }
+
+    BidirectionalSearch(Board initial, Heuristic heuristic,
+            SolverStats stats) {
+        this.initial = initial;
+        this.heuristic = heuristic;
+        this.stats = stats;
+        int n = initial.dimension();
+        if (initial.blank() == n * n - 1) {
+            backwardHeuristic = heuristic;
+        } else {
+            backwardHeuristic = new LinearConflict();
+        }
+        relabel = new int[n * n];
+        for (int i = 0; i < n * n; i++) {
+            int val = initial.tile(i);
+            if (val != 0) {
+                relabel[val] = i + 1;
+            }
+        }
+        forward = new Direction(true);
+        backward = new Direction(false);
+    }
+
+    // Moves of a shortest solution. Initial board must be solvable.
+    MoveList solve() {
+        Board goal = Board.goal(initial.dimension());
+        forward.add(new Node(initial, 0, forward.estimate(initial)),
+            backward);
+        backward.add(new Node(goal, 0, backward.estimate(goal)), forward);
+        while (!forward.open.isEmpty() && !backward.open.isEmpty()) {
+            int lowerBound = Math.max(forward.open.minPriority(),
+                backward.open.minPriority());
+            if (bound <= lowerBound) {
+                break;
+            }
+            stats.bound(lowerBound);
+            if (forward.open.size() <= backward.open.size()) {
+                forward.expand(backward);
+            } else {
+                backward.expand(forward);
+            }
+        }
+        Board meet = meetForward.board;
+        MoveList fromInitial = forward.backtrack(meet);
+        MoveList fromGoal = backward.backtrack(meet);
+        return fromInitial.concat(fromGoal.reversed());
+    }
+
+    // Board with tiles renamed, as seen by the backward heuristic
+    private static final class Relabeled extends TileGrid {
+        private final int n;
+        private final int[] tiles;
+        private final int[] positions;
+        private int manhattan;
+
+        Relabeled(Board board, int[] relabel) {
+            n = board.dimension();
+            tiles = new int[n * n];
+            positions = new int[n * n + 1];
+            for (int i = 0; i < n * n; i++) {
+                int val = relabel[board.tile(i)];
+                tiles[i] = val;
+                positions[val] = i;
+                if (val != 0) {
+                    int goal = val - 1;
+                    manhattan += Math.abs(goal / n - i / n)
+                        + Math.abs(goal % n - i % n);
+                }
+            }
+        }
+
+        int dimension() {
+            return n;
+        }
+
+        int tile(int index) {
+            return tiles[index];
+        }
+
+        int manhattan() {
+            return manhattan;
+        }
+
+        int[] positions() {
+            return positions;
+        }
+    }
+}
@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 import edu.princeton.cs.algs4.Stack;
 
 // 8-puzzle is a sliding puzzle, that consists of 8 numbered square tiles, and
@@ -6,134 +8,304 @@ import edu.princeton.cs.algs4.Stack;
 // Board class represents one composition of square tiles. 0 marks the empty
 // slot. Board can be used for a similar square puzzle of any size.
 //
+// Tiles are stored in row-major order in packed form. Boards up to 4x4 use
+// 4 bits per tile in a single long, so that a 15-puzzle board fits in 8
+// bytes. Larger boards use one byte per tile, or two bytes per tile for
+// boards larger than 16x16. All operations work directly on the packed form.
+//
+// Boards are hashed with Zobrist hashing: every (position, tile) pair has a
+// fixed pseudo-random 64-bit key, and the hash of a board is the XOR of the
+// keys of its tiles. Sliding a tile changes two keys, so child boards update
+// the hash in constant time.
+//
 // http://coursera.cs.princeton.edu/algs4/assignments/8puzzle.html
 // http://coursera.cs.princeton.edu/algs4/checklists/8puzzle.html
 
-public final class Board {
+public final class Board extends TileGrid {
+    private static final int MAX_PACKED_DIMENSION = 4;
+    private static final int MAX_BYTE_DIMENSION = 16;
+    private static final int[] NEIGHBOR_ORDER = {
+        MutableBoard.LEFT, MutableBoard.RIGHT, MutableBoard.UP,
+        MutableBoard.DOWN
+    };
+
     private final int n;
-    private final int[][] blocks;
-    private final boolean isGoal;
+    // Tiles for boards up to 4x4, tile at index i in bits 4i..4i+3
+    private final long packed;
+    // Tiles for larger boards, null for boards up to 4x4
+    private final byte[] tiles;
+    // Position of empty slot, and heuristics, so that child boards can
+    // update them in constant time instead of rescanning all tiles
+    private final int blank;
+    private final int hamming;
+    private final int manhattan;
+    private final long hash;
 
     public Board(int[][] blocks) {
         n = blocks.length;
-        this.blocks = deepCopyBlocks(blocks);
-        isGoal = isGoal();
+        long p = 0;
+        byte[] t = null;
+        if (n <= MAX_PACKED_DIMENSION) {
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    p |= (long) blocks[i][j] << (4 * (i * n + j));
+                }
+            }
+        } else {
+            t = new byte[n <= MAX_BYTE_DIMENSION ? n * n : 2 * n * n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    setTile(t, i * n + j, blocks[i][j]);
+                }
+            }
+        }
+        packed = p;
+        tiles = t;
+        blank = findBlank();
+        hamming = computeHamming();
+        manhattan = computeManhattan();
+        hash = computeHash();
+    }
+
+    // Board with packed tiles, for which heuristics are computed from scratch
+    private Board(int n, long packed, byte[] tiles) {
+        this.n = n;
+        this.packed = packed;
+        this.tiles = tiles;
+        blank = findBlank();
+        hamming = computeHamming();
+        manhattan = computeManhattan();
+        hash = computeHash();
+    }
+
+    // Child board, where the tile at index from has slid to parent's empty
+    // slot. Only the moved tile changes its distance to goal.
+    private Board(Board parent, int from) {
+        n = parent.n;
+        int to = parent.blank;
+        int val = parent.tile(from);
+        if (parent.tiles == null) {
+            packed = parent.packed ^ (long) val << (4 * from)
+                ^ (long) val << (4 * to);
+            tiles = null;
+        } else {
+            packed = 0;
+            tiles = parent.tiles.clone();
+            setTile(tiles, to, val);
+            setTile(tiles, from, 0);
+        }
+        blank = from;
+        hamming = parent.hamming - misplaced(val, from) + misplaced(val, to);
+        manhattan = parent.manhattan - distance(val, from)
+            + distance(val, to);
+        hash = parent.hash ^ zobrist(val, from) ^ zobrist(val, to);
     }
 
     public int dimension() {
         return n;
     }
 
-    public int hamming() {
-        if (isGoal) {
-            return 0;
+    // Tile at row-major index
+    int tile(int index) {
+        if (tiles == null) {
+            return (int) (packed >>> (4 * index)) & 0xF;
         }
-        int score = 0;
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (blocks[i][j] == 0) {
-                    continue; // don't count empty tile
-                }
-                if (blocks[i][j] != goalValue(i, j)) {
-                    score++;
-                }
-            }
+        if (n <= MAX_BYTE_DIMENSION) {
+            return tiles[index] & 0xFF;
+        }
+        return (tiles[2 * index] & 0xFF) << 8 | (tiles[2 * index + 1] & 0xFF);
+    }
+
+    private void setTile(byte[] t, int index, int value) {
+        if (n <= MAX_BYTE_DIMENSION) {
+            t[index] = (byte) value;
+        } else {
+            t[2 * index] = (byte) (value >>> 8);
+            t[2 * index + 1] = (byte) value;
         }
-        return score;
+    }
+
+    public int hamming() {
+        return hamming;
     }
 
     // Manhattan distance is the sum of vertical and horizontal distances from
     // the blocks to their goal positions.
     public int manhattan() {
-        if (isGoal) {
-            return 0;
+        return manhattan;
+    }
+
+    // Row-major index of the empty slot
+    int blank() {
+        return blank;
+    }
+
+    int[] positions() {
+        return positions(new int[n * n]);
+    }
+
+    // Positions are not kept, so they are scanned from the tiles
+    int[] positions(int[] scratch) {
+        for (int i = 0; i < n * n; i++) {
+            scratch[tile(i)] = i;
+        }
+        return scratch;
+    }
+
+    // Legal moves, bit m set if the empty slot can move in direction m, as
+    // defined by MutableBoard. Searches loop over the set bits with move(m),
+    // instead of collecting neighbors().
+    int legalMoves() {
+        return MutableBoard.legalMoves(blank, n);
+    }
+
+    // Can the empty slot move in direction, as defined by MutableBoard?
+    boolean canMove(int direction) {
+        return (legalMoves() & 1 << direction) != 0;
+    }
+
+    // Child board, where the empty slot has moved in direction, as defined
+    // by MutableBoard. Move must be legal.
+    Board move(int direction) {
+        return new Board(this, blank + MutableBoard.offset(direction, n));
+    }
+
+    private int findBlank() {
+        int index = 0;
+        while (tile(index) != 0) {
+            index++;
         }
+        return index;
+    }
+
+    private int computeHamming() {
         int score = 0;
-        int colShouldBe, rowShouldBe, val;
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                val = blocks[i][j];
-                if (val == 0) {
-                    continue;
-                }
-                if (val == goalValue(i, j)) {
-                    continue;
-                }
-                rowShouldBe = (int) Math.floor(val / n);
-                if (val % n == 0) {
-                    rowShouldBe--;
-                }
-                colShouldBe = val - 1 - rowShouldBe * n;
-                score += Math.abs(rowShouldBe - i);
-                score += Math.abs(colShouldBe - j);
-            }
+        for (int i = 0; i < n * n; i++) {
+            // don't count empty tile
+            score += misplaced(tile(i), i);
         }
         return score;
     }
 
-    public boolean isGoal() {
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (blocks[i][j] != goalValue(i, j)) {
-                    return false;
-                }
-            }
+    private int computeManhattan() {
+        int score = 0;
+        for (int i = 0; i < n * n; i++) {
+            score += distance(tile(i), i);
+        }
+        return score;
+    }
+
+    private long computeHash() {
+        long h = 0;
+        for (int i = 0; i < n * n; i++) {
+            h ^= zobrist(tile(i), i);
+        }
+        return h;
+    }
+
+    // Zobrist key for tile val at index. Keys are derived from position and
+    // tile with the SplitMix64 finalizer instead of a random table, so they
+    // take no memory and are the same in every run. Empty tile has no key,
+    // as its position follows from the other tiles.
+    private long zobrist(int val, int index) {
+        if (val == 0) {
+            return 0;
+        }
+        long z = ((long) index * n * n + val) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // 64-bit Zobrist hash
+    long hash64() {
+        return hash;
+    }
+
+    // Key that identifies the board among boards of the same dimension.
+    // Boards up to 4x4 use their packed tiles, which is exact. Larger boards
+    // use the Zobrist hash, where two boards collide with probability 2^-64.
+    long key() {
+        if (tiles == null) {
+            return packed;
+        }
+        return hash;
+    }
+
+    // 1 if tile val at index is not in its goal position, 0 otherwise.
+    // Empty tile is never counted.
+    private int misplaced(int val, int index) {
+        if (val == 0 || val == goalValue(index / n, index % n, n)) {
+            return 0;
         }
-        return true;
+        return 1;
+    }
+
+    // Manhattan distance of tile val at index from its goal position
+    private int distance(int val, int index) {
+        if (val == 0) {
+            return 0;
+        }
+        int goal = val - 1;
+        return Math.abs(goal / n - index / n) + Math.abs(goal % n - index % n);
+    }
+
+    // Board is the goal, when every tile is in place
+    public boolean isGoal() {
+        return manhattan == 0;
     }
 
-    private int goalValue(int i, int j) {
+    private static int goalValue(int i, int j, int n) {
         if (i == n - 1 && j == n - 1) {
             return 0;
         }
         return i * n + j + 1;
     }
 
+    // Solved board of dimension n
+    static Board goal(int n) {
+        int[][] blocks = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                blocks[i][j] = goalValue(i, j, n);
+            }
+        }
+        return new Board(blocks);
+    }
+
     // Twin board is constructed by swapping (direct exchange, no sliding) two
-    // neighbor tiles. Twin board is used to check if a board can be solved or
-    // not, and if not, search can be stopped. If initial board can be solved,
-    // twin board is unsolvable, and vice versa.
+    // neighbor tiles. If initial board can be solved, twin board is
+    // unsolvable, and vice versa, as the swap flips the permutation parity
+    // that Solver.isSolvable() checks.
     public Board twin() {
-        int[][] copy = deepCopyBlocks();
-        // Figure out which tiles to swap
-        int[] a = new int[2];
-        int[] b = new int[2];
         // Empty slot, marked by 0, cannot be part of swap.
-        if (copy[0][0] == 0) {
-            a[0] = 0;
-            a[1] = 1;
-            b[0] = 1;
-            b[1] = 1;
-        } else if (copy[0][1] == 0) {
-            a[0] = 0;
-            a[1] = 0;
-            b[0] = 1;
-            b[1] = 0;
+        int a, b;
+        if (tile(0) == 0) {
+            a = 1;
+            b = n + 1;
+        } else if (tile(1) == 0) {
+            a = 0;
+            b = n;
         } else {
-            a[0] = 0;
-            a[1] = 0;
-            b[0] = 0;
-            b[1] = 1;
+            a = 0;
+            b = 1;
         }
-        // Swap tiles
-        int temp = copy[a[0]][a[1]];
-        copy[a[0]][a[1]] = copy[b[0]][b[1]];
-        copy[b[0]][b[1]] = temp;
-        return new Board(copy);
+        return swap(a, b);
     }
 
-    private int[][] deepCopyBlocks() {
-        return deepCopyBlocks(blocks);
-    }
-
-    private int[][] deepCopyBlocks(final int[][] blocks) {
-        int[][] copy = new int[n][n];
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                copy[i][j] = blocks[i][j];
-            }
+    // Board with tiles at indices a and b exchanged
+    private Board swap(int a, int b) {
+        int tileA = tile(a);
+        int tileB = tile(b);
+        if (tiles == null) {
+            long diff = (long) (tileA ^ tileB);
+            return new Board(n, packed ^ diff << (4 * a) ^ diff << (4 * b),
+                null);
         }
-        return copy;
+        byte[] copy = tiles.clone();
+        setTile(copy, a, tileB);
+        setTile(copy, b, tileA);
+        return new Board(n, 0, copy);
     }
 
     public boolean equals(Object o) {
@@ -147,55 +319,22 @@ public final class Board {
             return false;
         }
         final Board that = (Board) o;
-        if (n != that.n) {
-            return false;
-        }
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (blocks[i][j] != that.blocks[i][j]) {
-                    return false;
-                }
-            }
-        }
-        return true;
+        return n == that.n && hash == that.hash && packed == that.packed
+            && Arrays.equals(tiles, that.tiles);
+    }
+
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
     }
 
+    // Boards one move away, from legalMoves() and move()
     public Iterable<Board> neighbors() {
         Stack<Board> stack = new Stack<Board>();
-        int[][] left, right, top, bottom;
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (blocks[i][j] != 0) {
-                    continue;
-                }
-                // get left neighbor
-                if (j > 0) {
-                    left = deepCopyBlocks();
-                    left[i][j] = left[i][j - 1];
-                    left[i][j - 1] = 0;
-                    stack.push(new Board(left));
-                }
-                // get right neighbor
-                if (j < n - 1) {
-                    right = deepCopyBlocks();
-                    right[i][j] = right[i][j + 1];
-                    right[i][j + 1] = 0;
-                    stack.push(new Board(right));
-                }
-                // get top neighbor
-                if (i > 0) {
-                    top = deepCopyBlocks();
-                    top[i][j] = top[i - 1][j];
-                    top[i - 1][j] = 0;
-                    stack.push(new Board(top));
-                }
-                // get bottom neighbor
-                if (i < n - 1) {
-                    bottom = deepCopyBlocks();
-                    bottom[i][j] = bottom[i + 1][j];
-                    bottom[i + 1][j] = 0;
-                    stack.push(new Board(bottom));
-                }
+        int legal = legalMoves();
+        // push left, right, top and bottom neighbor
+        for (int move : NEIGHBOR_ORDER) {
+            if ((legal & 1 << move) != 0) {
+                stack.push(move(move));
             }
         }
         return stack;
@@ -208,7 +347,7 @@ public final class Board {
             str.append("\n");
             for (int j = 0; j < n; j++) {
                 str.append(" ");
-                str.append(blocks[i][j]);
+                str.append(tile(i * n + j));
             }
         }
         return str.toString();
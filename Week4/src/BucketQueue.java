@@ -0,0 +1,121 @@
+import java.util.NoSuchElementException;
+
+// BucketQueue is a priority queue for small non-negative integer priorities,
+// like the f = g + h of A*. Items are kept in buckets indexed by f, and
+// within f by h, so that among equal f the item nearest to the goal comes
+// first. Each bucket is a stack, so the latest item comes first among equal
+// f and h, which makes the search dive depth-first along a plateau.
+//
+// Insert is O(1). Delete-min is amortized O(1) while the minimum f only
+// grows, as in A* with a consistent heuristic; a lower f just moves the
+// cursor back. There is no comparator and no heap of pointers to chase.
+final class BucketQueue<Item> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    // buckets[f][h], created on demand
+    private Object[][][] buckets = new Object[0][][];
+    private int[][] sizes = new int[0][];
+    // Number of items per f
+    private int[] counts = new int[0];
+    private int size;
+    // No item has f below minF
+    private int minF;
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Adds item with priority f = g + h, where 0 <= h <= f
+    void insert(Item item, int f, int h) {
+        if (h < 0 || h > f) {
+            throw new IllegalArgumentException();
+        }
+        if (f >= counts.length) {
+            growF(f);
+        }
+        if (h >= buckets[f].length) {
+            growH(f, h);
+        }
+        Object[] bucket = buckets[f][h];
+        int n = sizes[f][h];
+        if (bucket == null) {
+            bucket = new Object[INITIAL_CAPACITY];
+            buckets[f][h] = bucket;
+        } else if (n == bucket.length) {
+            Object[] copy = new Object[2 * n];
+            System.arraycopy(bucket, 0, copy, 0, n);
+            bucket = copy;
+            buckets[f][h] = bucket;
+        }
+        bucket[n] = item;
+        sizes[f][h] = n + 1;
+        counts[f]++;
+        if (size == 0 || f < minF) {
+            minF = f;
+        }
+        size++;
+    }
+
+    // Smallest f of an item in queue
+    int minPriority() {
+        if (size == 0) {
+            throw new NoSuchElementException("Priority queue underflow");
+        }
+        while (counts[minF] == 0) {
+            minF++;
+        }
+        return minF;
+    }
+
+    // Removes and returns the latest item with smallest f, and smallest h
+    // among those
+    Item delMin() {
+        int f = minPriority();
+        int[] sizesOfF = sizes[f];
+        int h = 0;
+        while (sizesOfF[h] == 0) {
+            h++;
+        }
+        Object[] bucket = buckets[f][h];
+        int n = --sizesOfF[h];
+        @SuppressWarnings("unchecked")
+        Item item = (Item) bucket[n];
+        // to avoid loitering
+        bucket[n] = null;
+        counts[f]--;
+        size--;
+        return item;
+    }
+
+    private void growF(int f) {
+        int capacity = Math.max(2 * counts.length, f + 1);
+        Object[][][] b = new Object[capacity][][];
+        int[][] s = new int[capacity][];
+        int[] c = new int[capacity];
+        System.arraycopy(buckets, 0, b, 0, counts.length);
+        System.arraycopy(sizes, 0, s, 0, counts.length);
+        System.arraycopy(counts, 0, c, 0, counts.length);
+        for (int i = counts.length; i < capacity; i++) {
+            b[i] = new Object[0][];
+            s[i] = new int[0];
+        }
+        buckets = b;
+        sizes = s;
+        counts = c;
+    }
+
+    private void growH(int f, int h) {
+        // h never exceeds f, so f + 1 buckets are enough
+        int capacity = Math.min(Math.max(2 * buckets[f].length, h + 1), f + 1);
+        Object[][] b = new Object[capacity][];
+        int[] s = new int[capacity];
+        System.arraycopy(buckets[f], 0, b, 0, buckets[f].length);
+        System.arraycopy(sizes[f], 0, s, 0, sizes[f].length);
+        buckets[f] = b;
+        sizes[f] = s;
+    }
+}
@@ -0,0 +1,487 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// ExternalSearch is external-memory A*, for boards up to 5x5 whose search
+// doesn't fit in the heap. Open boards live on disk, in one bucket file per
+// (g, h) pair, and buckets are expanded in order of f = g + h, and of g
+// within the same f. Only buffers and one sort run are kept in memory.
+//
+// A board is packed into two longs: 5 bits for each tile but the last,
+// which follows from the others, and the move that reached it. Children are
+// appended to their buckets unsorted, and duplicates are removed later, just
+// before a bucket is expanded: the bucket is sorted in runs, the runs are
+// merged, and boards that are already in the bucket two moves back are
+// dropped. The puzzle graph is undirected and bipartite, so with a
+// consistent heuristic, a board expanded with the fewest moves can only be
+// reached again two moves later (Edelkamp, Jabbar and Schrodl, 2004).
+// Earlier buckets are kept, sorted, for that and for the solution path.
+// Estimates of children are raised to at least the parent's estimate minus
+// one (pathmax), so that no child lands in an f already expanded.
+//
+// The solution is rebuilt backwards from the goal: the stored move is
+// undone, the parent is looked up by binary search in its bucket, and so on,
+// down to the initial board.
+final class ExternalSearch {
+    private static final int MAX_DIMENSION = 5;
+    private static final int TILE_BITS = 5;
+    private static final int TILES_PER_LONG = 12;
+    // Move is stored plus one, in the top bits of the high long
+    private static final int MOVE_SHIFT = 60;
+    private static final long STATE_MASK = (1L << MOVE_SHIFT) - 1;
+    private static final int RECORD_BYTES = 16;
+    private static final int RUN_RECORDS = 1 << 20;
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int INSERTION_SORT_CUTOFF = 8;
+
+    private final int n;
+    private final Board initial;
+    private final Heuristic heuristic;
+    private final SolverStats stats;
+    private File dir;
+    // Unsorted buckets still to be expanded, by bucket(g, h)
+    private final HashMap<Long, RecordWriter> open =
+        new HashMap<Long, RecordWriter>();
+    private long[] run;
+    // Largest estimate of any bucket
+    private int maxH;
+
+    ExternalSearch(Board initial, Heuristic heuristic, SolverStats stats) {
+        n = initial.dimension();
+        if (n > MAX_DIMENSION) {
+            throw new IllegalArgumentException(
+                "External search needs a board up to 5x5");
+        }
+        this.initial = initial;
+        this.heuristic = heuristic;
+        this.stats = stats;
+    }
+
+    // Moves of a shortest solution. Initial board must be solvable.
+    int[] solve() throws IOException {
+        dir = Files.createTempDirectory("puzzle").toFile();
+        try {
+            MutableBoard start = new MutableBoard(initial);
+            int h0 = stats.estimate(heuristic, start);
+            writer(0, h0).write(high(start, MutableBoard.NONE), low(start));
+            for (int f = h0; !open.isEmpty(); f++) {
+                stats.bound(f);
+                for (int g = 0; g <= f; g++) {
+                    int h = f - g;
+                    RecordWriter raw = open.remove(bucket(g, h));
+                    if (raw == null) {
+                        continue;
+                    }
+                    raw.close();
+                    File sorted = merge(g, h, sortRuns(g, h));
+                    long[] goal = expand(sorted, g, h);
+                    if (goal != null) {
+                        return path(g, goal[0], goal[1]);
+                    }
+                }
+            }
+            throw new IllegalStateException("No solution");
+        } finally {
+            for (RecordWriter writer : open.values()) {
+                writer.close();
+            }
+            open.clear();
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    private static long bucket(int g, int h) {
+        return (long) g << 32 | h;
+    }
+
+    private File file(int g, int h, String suffix) {
+        return new File(dir, g + "-" + h + suffix);
+    }
+
+    private RecordWriter writer(int g, int h) throws IOException {
+        RecordWriter writer = open.get(bucket(g, h));
+        if (writer == null) {
+            maxH = Math.max(maxH, h);
+            writer = new RecordWriter(file(g, h, ".raw"));
+            open.put(bucket(g, h), writer);
+        }
+        return writer;
+    }
+
+    // Expands every board of a sorted bucket into the buckets of g + 1.
+    // Returns the goal record, if the bucket has it.
+    private long[] expand(File sorted, int g, int parentH)
+            throws IOException {
+        int[] tiles = new int[n * n];
+        RecordReader in = new RecordReader(sorted);
+        try {
+            for (; in.hasNext; in.advance()) {
+                unpack(in.hi, in.lo, tiles);
+                MutableBoard board = new MutableBoard(n, tiles);
+                if (board.isGoal()) {
+                    return new long[] {in.hi, in.lo};
+                }
+                stats.countExpanded();
+                int previous = move(in.hi);
+                // legal moves, but not undoing the previous move
+                int moves = board.legalMoves();
+                if (previous != MutableBoard.NONE) {
+                    moves &= ~(1 << (previous ^ 1));
+                }
+                for (; moves != 0; moves &= moves - 1) {
+                    int move = Integer.numberOfTrailingZeros(moves);
+                    stats.countGenerated();
+                    board.apply(move);
+                    int h = Math.max(stats.estimate(heuristic, board),
+                        parentH - 1);
+                    writer(g + 1, h).write(high(board, move), low(board));
+                    board.undo(move);
+                }
+            }
+            return null;
+        } finally {
+            in.close();
+        }
+    }
+
+    // Moves from initial board to the board of record (hi, lo) at depth g
+    private int[] path(int g, long hi, long lo) throws IOException {
+        int[] moves = new int[g];
+        int[] tiles = new int[n * n];
+        unpack(hi, lo, tiles);
+        for (int depth = g; depth > 0; depth--) {
+            int move = move(hi);
+            moves[depth - 1] = move;
+            // slide the empty slot back where it came from
+            MutableBoard board = new MutableBoard(n, tiles);
+            board.undo(move);
+            // estimate may have been raised, so look in every bucket
+            long[] parent = null;
+            for (int h = 0; parent == null && h <= maxH; h++) {
+                File file = file(depth - 1, h, ".sorted");
+                if (file.exists()) {
+                    parent = find(file, high(board, MutableBoard.NONE),
+                        low(board));
+                }
+            }
+            if (parent == null) {
+                throw new IllegalStateException("Parent board not found");
+            }
+            hi = parent[0];
+            lo = parent[1];
+            unpack(hi, lo, tiles);
+        }
+        return moves;
+    }
+
+    // Record of sorted file with the board of (hi, lo), by binary search,
+    // or null if there is none
+    private static long[] find(File file, long hi, long lo)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES);
+            long low = 0;
+            long high = channel.size() / RECORD_BYTES - 1;
+            while (low <= high) {
+                long mid = (low + high) >>> 1;
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer,
+                            mid * RECORD_BYTES + buffer.position()) < 0) {
+                        throw new IOException("Truncated bucket " + file);
+                    }
+                }
+                long midHi = buffer.getLong(0);
+                long midLo = buffer.getLong(8);
+                int c = compare(midHi, midLo, hi, lo);
+                if (c < 0) {
+                    low = mid + 1;
+                } else if (c > 0) {
+                    high = mid - 1;
+                } else {
+                    return new long[] {midHi, midLo};
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        return null;
+    }
+
+    // Sorts the unsorted bucket into runs of up to RUN_RECORDS each
+    private List<File> sortRuns(int g, int h) throws IOException {
+        if (run == null) {
+            run = new long[2 * RUN_RECORDS];
+        }
+        File raw = file(g, h, ".raw");
+        List<File> runs = new ArrayList<File>();
+        RecordReader in = new RecordReader(raw);
+        try {
+            while (in.hasNext) {
+                int size = 0;
+                for (; in.hasNext && size < RUN_RECORDS; in.advance()) {
+                    run[2 * size] = in.hi;
+                    run[2 * size + 1] = in.lo;
+                    size++;
+                }
+                sort(run, 0, size);
+                File file = file(g, h, ".run" + runs.size());
+                runs.add(file);
+                RecordWriter out = new RecordWriter(file);
+                try {
+                    for (int i = 0; i < size; i++) {
+                        out.write(run[2 * i], run[2 * i + 1]);
+                    }
+                } finally {
+                    out.close();
+                }
+            }
+        } finally {
+            in.close();
+        }
+        raw.delete();
+        return runs;
+    }
+
+    // Merges sorted runs into the sorted bucket file, without duplicates,
+    // and without boards of the bucket two moves back. Runs are few, so the
+    // smallest head is found by scanning them.
+    private File merge(int g, int h, List<File> runs) throws IOException {
+        File sorted = file(g, h, ".sorted");
+        RecordReader[] readers = new RecordReader[runs.size()];
+        RecordReader older = null;
+        RecordWriter out = new RecordWriter(sorted);
+        try {
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = new RecordReader(runs.get(i));
+            }
+            File olderFile = file(g - 2, h, ".sorted");
+            if (g >= 2 && olderFile.exists()) {
+                older = new RecordReader(olderFile);
+            }
+            boolean isFirst = true;
+            long lastHi = 0;
+            long lastLo = 0;
+            while (true) {
+                RecordReader min = null;
+                for (RecordReader reader : readers) {
+                    if (reader.hasNext && (min == null
+                            || compare(reader.hi, reader.lo,
+                                min.hi, min.lo) < 0)) {
+                        min = reader;
+                    }
+                }
+                if (min == null) {
+                    break;
+                }
+                long hi = min.hi;
+                long lo = min.lo;
+                min.advance();
+                if (!isFirst && compare(hi, lo, lastHi, lastLo) == 0) {
+                    stats.countDuplicate();
+                    continue;
+                }
+                isFirst = false;
+                lastHi = hi;
+                lastLo = lo;
+                if (older != null) {
+                    while (older.hasNext
+                            && compare(older.hi, older.lo, hi, lo) < 0) {
+                        older.advance();
+                    }
+                    if (older.hasNext
+                            && compare(older.hi, older.lo, hi, lo) == 0) {
+                        stats.countDuplicate();
+                        continue;
+                    }
+                }
+                out.write(hi, lo);
+            }
+        } finally {
+            out.close();
+            for (RecordReader reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+            if (older != null) {
+                older.close();
+            }
+        }
+        for (File file : runs) {
+            file.delete();
+        }
+        return sorted;
+    }
+
+    // Orders records by board, ignoring the move that reached it
+    private static int compare(long hiA, long loA, long hiB, long loB) {
+        int c = Long.compare(hiA & STATE_MASK, hiB & STATE_MASK);
+        if (c != 0) {
+            return c;
+        }
+        return Long.compare(loA, loB);
+    }
+
+    // Sorts records from..to-1 of a, two longs each, by 3-way quicksort, as
+    // runs have many duplicates
+    private static void sort(long[] a, int from, int to) {
+        if (to - from <= INSERTION_SORT_CUTOFF) {
+            for (int i = from + 1; i < to; i++) {
+                for (int j = i; j > from && compare(a[2 * j], a[2 * j + 1],
+                        a[2 * j - 2], a[2 * j - 1]) < 0; j--) {
+                    swap(a, j, j - 1);
+                }
+            }
+            return;
+        }
+        swap(a, from, (from + to) >>> 1);
+        long pivotHi = a[2 * from];
+        long pivotLo = a[2 * from + 1];
+        int lt = from;
+        int gt = to - 1;
+        int i = from + 1;
+        while (i <= gt) {
+            int c = compare(a[2 * i], a[2 * i + 1], pivotHi, pivotLo);
+            if (c < 0) {
+                swap(a, lt++, i++);
+            } else if (c > 0) {
+                swap(a, i, gt--);
+            } else {
+                i++;
+            }
+        }
+        sort(a, from, lt);
+        sort(a, gt + 1, to);
+    }
+
+    private static void swap(long[] a, int i, int j) {
+        long hi = a[2 * i];
+        long lo = a[2 * i + 1];
+        a[2 * i] = a[2 * j];
+        a[2 * i + 1] = a[2 * j + 1];
+        a[2 * j] = hi;
+        a[2 * j + 1] = lo;
+    }
+
+    // Tiles 0..11 of board
+    private long low(TileGrid board) {
+        long bits = 0;
+        int cells = Math.min(TILES_PER_LONG, n * n - 1);
+        for (int i = 0; i < cells; i++) {
+            bits |= (long) board.tile(i) << (TILE_BITS * i);
+        }
+        return bits;
+    }
+
+    // Tiles 12..n^2-2 of board, and move that reached it
+    private long high(TileGrid board, int move) {
+        long bits = (long) (move + 1) << MOVE_SHIFT;
+        for (int i = TILES_PER_LONG; i < n * n - 1; i++) {
+            bits |= (long) board.tile(i) << (TILE_BITS * (i - TILES_PER_LONG));
+        }
+        return bits;
+    }
+
+    private static int move(long hi) {
+        return (int) (hi >>> MOVE_SHIFT) - 1;
+    }
+
+    private void unpack(long hi, long lo, int[] tiles) {
+        int cells = n * n;
+        int sum = 0;
+        for (int i = 0; i < cells - 1; i++) {
+            long bits = i < TILES_PER_LONG ? lo >>> (TILE_BITS * i)
+                : hi >>> (TILE_BITS * (i - TILES_PER_LONG));
+            tiles[i] = (int) bits & 0x1F;
+            sum += tiles[i];
+        }
+        // tiles are 0..cells-1, so the last one is what is missing from sum
+        tiles[cells - 1] = cells * (cells - 1) / 2 - sum;
+    }
+
+    // Sequential reader of 16-byte records
+    private static final class RecordReader {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer =
+            ByteBuffer.allocateDirect(BUFFER_BYTES);
+        boolean hasNext;
+        long hi;
+        long lo;
+
+        RecordReader(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+            channel = this.file.getChannel();
+            buffer.flip();
+            advance();
+        }
+
+        void advance() throws IOException {
+            if (buffer.remaining() < RECORD_BYTES) {
+                buffer.compact();
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    continue;
+                }
+                buffer.flip();
+            }
+            hasNext = buffer.remaining() >= RECORD_BYTES;
+            if (hasNext) {
+                hi = buffer.getLong();
+                lo = buffer.getLong();
+            }
+        }
+
+        void close() throws IOException {
+            file.close();
+        }
+    }
+
+    // Buffered appending writer of 16-byte records
+    private static final class RecordWriter {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer =
+            ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        RecordWriter(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "rw");
+            channel = this.file.getChannel();
+        }
+
+        void write(long hi, long lo) throws IOException {
+            if (buffer.remaining() < RECORD_BYTES) {
+                flush();
+            }
+            buffer.putLong(hi);
+            buffer.putLong(lo);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void close() throws IOException {
+            flush();
+            file.close();
+        }
+    }
+}
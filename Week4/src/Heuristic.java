@@ -0,0 +1,17 @@
+// Heuristic estimates the number of moves needed to solve a board. Solver
+// finds the shortest solution with any admissible heuristic, one that never
+// overestimates the number of moves. Better estimates expand fewer nodes.
+//
+// Heuristics read the tiles through TileGrid, so that they can estimate a
+// MutableBoard in place, as well as a Board.
+public interface Heuristic {
+    // Sum of Manhattan distances of tiles from their goal positions
+    Heuristic MANHATTAN = new Heuristic() {
+        @Override
+        public int estimate(TileGrid board) {
+            return board.manhattan();
+        }
+    };
+
+    int estimate(TileGrid board);
+}
@@ -0,0 +1,75 @@
+import java.util.Arrays;
+
+// IdaStar is iterative deepening A*. It runs depth-first searches, that cut
+// off branches whose f = g + h exceeds a bound, starting with the estimate
+// of the initial board. Each round raises the bound to the smallest f that
+// was cut off, so the first solution found is a shortest one.
+//
+// Search applies and undoes moves on a single MutableBoard, and never moves
+// the empty slot straight back to where it came from. Nothing is allocated
+// per node, and memory is proportional to solution length, at the cost of
+// expanding some nodes again in every round.
+final class IdaStar {
+    private static final int FOUND = -1;
+
+    private final MutableBoard board;
+    private final Heuristic heuristic;
+    private final SolverStats stats;
+    // Moves from the initial board to the current node
+    private int[] path;
+    private int length;
+
+    IdaStar(Board initial, Heuristic heuristic, SolverStats stats) {
+        board = new MutableBoard(initial);
+        this.heuristic = heuristic;
+        this.stats = stats;
+    }
+
+    // Moves of a shortest solution. Initial board must be solvable.
+    int[] solve() {
+        int bound = stats.estimate(heuristic, board);
+        while (true) {
+            stats.bound(bound);
+            path = new int[bound + 1];
+            int t = search(0, bound, MutableBoard.NONE);
+            if (t == FOUND) {
+                return Arrays.copyOf(path, length);
+            }
+            bound = t;
+        }
+    }
+
+    // Returns FOUND, or the smallest f over bound seen below this node
+    private int search(int g, int bound, int previous) {
+        int f = g + stats.estimate(heuristic, board);
+        if (f > bound) {
+            return f;
+        }
+        if (board.isGoal()) {
+            length = g;
+            return FOUND;
+        }
+        stats.countExpanded();
+        // open list of a depth-first search is its path
+        stats.open(g);
+        int min = Integer.MAX_VALUE;
+        // legal moves, but not undoing the previous move
+        int moves = board.legalMoves();
+        if (previous != MutableBoard.NONE) {
+            moves &= ~(1 << (previous ^ 1));
+        }
+        for (; moves != 0; moves &= moves - 1) {
+            int move = Integer.numberOfTrailingZeros(moves);
+            stats.countGenerated();
+            board.apply(move);
+            path[g] = move;
+            int t = search(g + 1, bound, move);
+            board.undo(move);
+            if (t == FOUND) {
+                return FOUND;
+            }
+            min = Math.min(min, t);
+        }
+        return min;
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+
+// MoveList is a solution as the moves of the empty slot, 2 bits per move, so
+// that a 60-move solution takes two longs. Moves are numbered as in
+// MutableBoard: 0 up, 1 down, 2 left and 3 right.
+public final class MoveList {
+    private static final String LETTERS = "UDLR";
+    private static final int MOVES_PER_WORD = 32;
+
+    private final long[] words;
+    private final int size;
+
+    private MoveList(long[] words, int size) {
+        this.words = words;
+        this.size = size;
+    }
+
+    static MoveList of(int[] moves) {
+        long[] words = new long[(moves.length + MOVES_PER_WORD - 1)
+            / MOVES_PER_WORD];
+        for (int i = 0; i < moves.length; i++) {
+            if (moves[i] < 0 || moves[i] > 3) {
+                throw new IllegalArgumentException("Bad move " + moves[i]);
+            }
+            words[i / MOVES_PER_WORD] |= (long) moves[i] << (2 * i);
+        }
+        return new MoveList(words, moves.length);
+    }
+
+    // Moves from the start of a search to a reached board. reached gives
+    // the fewest moves found to a board, or -1 if it wasn't reached. Every
+    // value is the length of a path found to the board, and values only
+    // decrease, so every reached board but the start has a neighbor with a
+    // smaller value: the one it was first reached from. Stepping to the
+    // neighbor with the smallest value leads back to the start, in at most
+    // as many moves as the board's value, and in exactly as many if that
+    // value is the fewest possible.
+    static MoveList backtrack(Board board, ToIntFunction<Board> reached) {
+        int moves = reached.applyAsInt(board);
+        int[] back = new int[moves];
+        int length = 0;
+        while (moves > 0) {
+            int best = -1;
+            int bestMoves = moves;
+            for (int legal = board.legalMoves(); legal != 0;
+                    legal &= legal - 1) {
+                int move = Integer.numberOfTrailingZeros(legal);
+                int known = reached.applyAsInt(board.move(move));
+                if (known != -1 && known < bestMoves) {
+                    best = move;
+                    bestMoves = known;
+                }
+            }
+            if (best == -1) {
+                throw new IllegalStateException("Path is broken");
+            }
+            board = board.move(best);
+            moves = bestMoves;
+            back[length++] = best;
+        }
+        // moving back the other way, in reverse order, retraces the path
+        int[] path = new int[length];
+        for (int i = 0; i < length; i++) {
+            path[i] = back[length - 1 - i] ^ 1;
+        }
+        return of(path);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Move number i
+    public int get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return (int) (words[i / MOVES_PER_WORD] >>> (2 * i)) & 3;
+    }
+
+    public IntStream stream() {
+        return IntStream.range(0, size).map(new IntUnaryOperator() {
+            @Override
+            public int applyAsInt(int i) {
+                return get(i);
+            }
+        });
+    }
+
+    // Moves in reverse order, each the other way, which undoes this list
+    MoveList reversed() {
+        int[] moves = new int[size];
+        for (int i = 0; i < size; i++) {
+            moves[size - 1 - i] = get(i) ^ 1;
+        }
+        return of(moves);
+    }
+
+    // This list followed by other
+    MoveList concat(MoveList other) {
+        int[] moves = new int[size + other.size];
+        for (int i = 0; i < size; i++) {
+            moves[i] = get(i);
+        }
+        for (int i = 0; i < other.size; i++) {
+            moves[size + i] = other.get(i);
+        }
+        return of(moves);
+    }
+
+    public boolean equals(Object o) {
+        if (o == null || o.getClass() != getClass()) {
+            return false;
+        }
+        MoveList that = (MoveList) o;
+        return size == that.size && Arrays.equals(words, that.words);
+    }
+
+    public int hashCode() {
+        return 31 * size + Arrays.hashCode(words);
+    }
+
+    // Moves as letters U, D, L and R
+    public String toString() {
+        StringBuilder str = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            str.append(LETTERS.charAt(get(i)));
+        }
+        return str.toString();
+    }
+}
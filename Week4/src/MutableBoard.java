@@ -0,0 +1,177 @@
+// MutableBoard is a tile composition that is changed in place, for searches
+// that walk the search tree depth-first, like IDA*. A move slides the empty
+// slot up, down, left or right, and is undone by the opposite move, so a
+// search applies and undoes moves on one board without allocating.
+//
+// Tiles are kept in an int array, with the position of every tile, and
+// Manhattan distance, which are updated in constant time by each move.
+//
+// Legal moves are listed as a bitmask, bit m set if move m is legal, looked
+// up by the position of the empty slot in a table shared by all boards of
+// the same dimension. Searches loop over the set bits, so expanding a node
+// allocates nothing, and neither does making a board.
+final class MutableBoard extends TileGrid {
+    // Directions of the empty slot. Opposite of move m is m ^ 1.
+    static final int UP = 0;
+    static final int DOWN = 1;
+    static final int LEFT = 2;
+    static final int RIGHT = 3;
+    static final int NONE = -1;
+
+    // Tables of legal moves are built up front for boards up to this size,
+    // and shared; larger boards build their own
+    private static final int MAX_SHARED_DIMENSION = 8;
+    private static final int[][] LEGAL = new int[MAX_SHARED_DIMENSION + 1][];
+
+    static {
+        for (int n = 1; n <= MAX_SHARED_DIMENSION; n++) {
+            LEGAL[n] = legalMovesTable(n);
+        }
+    }
+
+    private final int n;
+    private final int[] tiles;
+    private final int[] positions;
+    // Legal moves by position of the empty slot, shared
+    private final int[] legal;
+    private int manhattan;
+
+    MutableBoard(Board board) {
+        n = board.dimension();
+        tiles = new int[n * n];
+        positions = new int[n * n];
+        for (int i = 0; i < n * n; i++) {
+            tiles[i] = board.tile(i);
+            positions[tiles[i]] = i;
+        }
+        manhattan = board.manhattan();
+        legal = legalTable(n);
+    }
+
+    // Board of dimension n with tiles in row-major order
+    MutableBoard(int n, int[] tiles) {
+        this.n = n;
+        this.tiles = tiles.clone();
+        positions = new int[n * n];
+        for (int i = 0; i < n * n; i++) {
+            positions[this.tiles[i]] = i;
+            if (this.tiles[i] != 0) {
+                manhattan += distance(this.tiles[i], i);
+            }
+        }
+        legal = legalTable(n);
+    }
+
+    int dimension() {
+        return n;
+    }
+
+    int tile(int index) {
+        return tiles[index];
+    }
+
+    int manhattan() {
+        return manhattan;
+    }
+
+    int[] positions() {
+        return positions;
+    }
+
+    int blank() {
+        return positions[0];
+    }
+
+    boolean isGoal() {
+        return manhattan == 0;
+    }
+
+    // Legal moves, bit m set if the empty slot can move in direction m
+    int legalMoves() {
+        return legal[positions[0]];
+    }
+
+    // Can the empty slot move in direction?
+    boolean canMove(int move) {
+        return (legal[positions[0]] & 1 << move) != 0;
+    }
+
+    // Legal moves with the empty slot at index blank of an n-by-n board
+    static int legalMoves(int blank, int n) {
+        int moves = 0;
+        if (blank >= n) {
+            moves |= 1 << UP;
+        }
+        if (blank < n * n - n) {
+            moves |= 1 << DOWN;
+        }
+        if (blank % n != 0) {
+            moves |= 1 << LEFT;
+        }
+        if (blank % n != n - 1) {
+            moves |= 1 << RIGHT;
+        }
+        return moves;
+    }
+
+    // Table of legal moves by position of the empty slot
+    private static int[] legalTable(int n) {
+        if (n <= MAX_SHARED_DIMENSION) {
+            return LEGAL[n];
+        }
+        return legalMovesTable(n);
+    }
+
+    private static int[] legalMovesTable(int n) {
+        int[] table = new int[n * n];
+        for (int blank = 0; blank < n * n; blank++) {
+            table[blank] = legalMoves(blank, n);
+        }
+        return table;
+    }
+
+    // Moves the empty slot in direction, which must be legal
+    void apply(int move) {
+        int blank = positions[0];
+        int from = blank + offset(move, n);
+        int val = tiles[from];
+        manhattan += distance(val, blank) - distance(val, from);
+        tiles[blank] = val;
+        positions[val] = blank;
+        tiles[from] = 0;
+        positions[0] = from;
+    }
+
+    // Reverts apply(move)
+    void undo(int move) {
+        apply(move ^ 1);
+    }
+
+    // Change of empty slot index for a move on an n-by-n board
+    static int offset(int move, int n) {
+        switch (move) {
+            case UP:
+                return -n;
+            case DOWN:
+                return n;
+            case LEFT:
+                return -1;
+            default:
+                return 1;
+        }
+    }
+
+    private int distance(int val, int index) {
+        int goal = val - 1;
+        return Math.abs(goal / n - index / n) + Math.abs(goal % n - index % n);
+    }
+
+    // Immutable copy of current composition
+    Board toBoard() {
+        int[][] blocks = new int[n][n];
+        for (int i = 0; i < n * n; i++) {
+            blocks[i / n][i % n] = tiles[i];
+        }
+        return new Board(blocks);
+    }
+}
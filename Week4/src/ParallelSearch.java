@@ -0,0 +1,289 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToIntFunction;
+
+// ParallelSearch is hash-distributed A* (HDA*). Every board has an owner
+// thread, chosen by its hash. Each worker thread has its own open list and
+// closed set, and only ever expands boards it owns. Generated boards owned
+// by other workers are sent to them in batches, through lock-free mailboxes.
+// No locks are taken on the search path.
+//
+// Workers prune nodes whose f is not below the cost of the best solution
+// found so far, and keep searching after a solution is found, until no
+// worker has a node that could lead to a shorter one. With an admissible
+// heuristic, the solution is then optimal.
+//
+// Termination: a worker is idle, when its mailbox is empty and it has nothing
+// to expand. pending counts messages sent, minus messages received by
+// workers that have gone idle since. Search is over when every worker is idle
+// and pending is zero, as then no node is left to expand or in transit.
+//
+// A worker that fails, or whose SearchBudget is spent, stops the others, and
+// solve() rethrows its exception once they are all done.
+//
+// Nodes hold the move that reached them instead of their predecessor. The
+// solution is traced back through the closed sets of the owners, once the
+// workers are done.
+final class ParallelSearch {
+    private static final int BATCH_SIZE = 64;
+    // Nodes expanded between mailbox checks
+    private static final int CHUNK_SIZE = 64;
+    private static final long IDLE_WAIT_NANOS = 50000;
+
+    private final Heuristic heuristic;
+    private final SolverStats stats;
+    private final Worker[] workers;
+    private final AtomicInteger idle = new AtomicInteger();
+    private final AtomicLong pending = new AtomicLong();
+    private volatile boolean done;
+    // Cost of best solution so far, and its goal board
+    private volatile int bound = Integer.MAX_VALUE;
+    private Board best;
+    // First exception thrown by a worker
+    private RuntimeException failure;
+
+    // Node of the search tree. Fields are final, so nodes can be handed to
+    // other threads safely.
+    static final class Node {
+        final Board board;
+        final int moves;
+        final int estimate;
+        // Move of the empty slot that reached board
+        final int move;
+
+        Node(Board board, int moves, int estimate, int move) {
+            this.board = board;
+            this.moves = moves;
+            this.estimate = estimate;
+            this.move = move;
+        }
+    }
+
+    ParallelSearch(Heuristic heuristic, int threads, SolverStats stats) {
+        if (threads < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.heuristic = heuristic;
+        this.stats = stats;
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(i);
+        }
+    }
+
+    // Moves of a shortest solution. Initial board must be solvable.
+    MoveList solve(Board initial) throws InterruptedException {
+        Node root = new Node(initial, 0, heuristic.estimate(initial),
+            MutableBoard.NONE);
+        idle.set(workers.length);
+        pending.set(1);
+        owner(initial).mailbox.add(new Node[] {root});
+        Thread[] threads = new Thread[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            threads[i] = new Thread(workers[i], "hda-worker-" + i);
+            threads[i].start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            // Stop workers, if this thread was interrupted
+            done = true;
+        }
+        for (Worker worker : workers) {
+            stats.add(worker.stats);
+        }
+        Board goal;
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+            goal = best;
+        }
+        // workers are done, so their closed sets can be read here
+        return MoveList.backtrack(goal, new ToIntFunction<Board>() {
+            @Override
+            public int applyAsInt(Board board) {
+                return owner(board).closed.get(board.key());
+            }
+        });
+    }
+
+    private Worker owner(Board board) {
+        long h = board.hash64();
+        return workers[(int) ((h >>> 1) % workers.length)];
+    }
+
+    private synchronized void offerSolution(Node goal) {
+        if (goal.moves < bound) {
+            best = goal.board;
+            bound = goal.moves;
+        }
+    }
+
+    private synchronized void fail(RuntimeException e) {
+        if (failure == null) {
+            failure = e;
+        }
+        done = true;
+    }
+
+    private final class Worker implements Runnable {
+        private final int id;
+        private final ConcurrentLinkedQueue<Node[]> mailbox =
+            new ConcurrentLinkedQueue<Node[]>();
+        private final BucketQueue<Node> open = new BucketQueue<Node>();
+        private final StateTable closed = new StateTable();
+        private final SolverStats stats = ParallelSearch.this.stats.forThread();
+        // Outgoing batches, one per worker
+        private final Node[][] outbox;
+        private final int[] outboxSize;
+        private boolean isIdle = true;
+        private long received;
+
+        Worker(int id) {
+            this.id = id;
+            outbox = new Node[workers.length][];
+            outboxSize = new int[workers.length];
+        }
+
+        @Override
+        public void run() {
+            try {
+                search();
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void search() {
+            while (!done) {
+                boolean worked = receiveAll();
+                if (!open.isEmpty() && open.minPriority() < bound) {
+                    expandChunk();
+                    flushAll();
+                    worked = true;
+                }
+                if (worked) {
+                    continue;
+                }
+                flushAll();
+                if (!isIdle) {
+                    isIdle = true;
+                    idle.incrementAndGet();
+                    pending.addAndGet(-received);
+                    received = 0;
+                }
+                if (idle.get() == workers.length && pending.get() == 0) {
+                    done = true;
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_WAIT_NANOS);
+            }
+        }
+
+        private boolean receiveAll() {
+            boolean any = false;
+            Node[] batch;
+            while ((batch = mailbox.poll()) != null) {
+                if (isIdle) {
+                    isIdle = false;
+                    idle.decrementAndGet();
+                }
+                for (Node node : batch) {
+                    if (node == null) {
+                        break;
+                    }
+                    accept(node);
+                    received++;
+                }
+                any = true;
+            }
+            return any;
+        }
+
+        // Adds node to open list, unless its board is known with as few moves
+        private void accept(Node node) {
+            long key = node.board.key();
+            int known = closed.get(key);
+            if (known != -1 && known <= node.moves) {
+                stats.countDuplicate();
+                return;
+            }
+            closed.put(key, node.moves);
+            open.insert(node, node.moves + node.estimate, node.estimate);
+            stats.open(open.size());
+            stats.closed(closed.size());
+        }
+
+        private void expandChunk() {
+            for (int i = 0; i < CHUNK_SIZE && !open.isEmpty(); i++) {
+                if (open.minPriority() >= bound) {
+                    return;
+                }
+                Node node = open.delMin();
+                // skip nodes superseded by a shorter path
+                if (closed.get(node.board.key()) != node.moves) {
+                    continue;
+                }
+                if (node.board.isGoal()) {
+                    offerSolution(node);
+                    continue;
+                }
+                stats.countExpanded();
+                int moves = node.moves + 1;
+                // legal moves, but not undoing the previous move
+                int legal = node.board.legalMoves();
+                if (node.move != MutableBoard.NONE) {
+                    legal &= ~(1 << (node.move ^ 1));
+                }
+                for (; legal != 0; legal &= legal - 1) {
+                    int move = Integer.numberOfTrailingZeros(legal);
+                    Board neighbor = node.board.move(move);
+                    stats.countGenerated();
+                    int estimate = stats.estimate(heuristic, neighbor);
+                    if (moves + estimate >= bound) {
+                        continue;
+                    }
+                    Node child = new Node(neighbor, moves, estimate, move);
+                    Worker owner = owner(neighbor);
+                    if (owner == this) {
+                        accept(child);
+                    } else {
+                        send(owner.id, child);
+                    }
+                }
+            }
+        }
+
+        private void send(int to, Node node) {
+            if (outbox[to] == null) {
+                outbox[to] = new Node[BATCH_SIZE];
+            }
+            outbox[to][outboxSize[to]++] = node;
+            if (outboxSize[to] == BATCH_SIZE) {
+                flush(to);
+            }
+        }
+
+        private void flush(int to) {
+            if (outboxSize[to] == 0) {
+                return;
+            }
+            // Count messages before they can be received
+            pending.addAndGet(outboxSize[to]);
+            workers[to].mailbox.add(outbox[to]);
+            outbox[to] = null;
+            outboxSize[to] = 0;
+        }
+
+        private void flushAll() {
+            for (int to = 0; to < workers.length; to++) {
+                flush(to);
+            }
+        }
+    }
+}
@@ -0,0 +1,330 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// PatternDatabase is an additive heuristic built from disjoint pattern
+// databases. A pattern is a subset of tiles, and its database holds, for
+// every placement of the pattern tiles, the fewest moves of pattern tiles
+// needed to bring them to their goal positions. Moves of other tiles are
+// free, so the values of disjoint patterns can be added, and the sum is still
+// admissible. For 4x4 boards, e.g. a 6-6-3 split of tiles is common.
+//
+// Databases are generated once by a breadth-first search backwards from the
+// goal, and stored on disk. At startup they are memory-mapped, so loading is
+// instant and the tables are shared between processes by the OS page cache.
+//
+// File format: int magic, int dimension, int pattern size k, k ints of
+// pattern tiles, and one byte per placement of the pattern tiles. Placements
+// are ranked as k-permutations of board positions, so the file has exactly
+// (n^2)! / (n^2 - k)! entries, e.g. 5.8MB for a 6-tile pattern of a 4x4 board.
+//
+// Usage: PatternDatabase <dimension> <tile,tile,...> <file.pdb>
+public final class PatternDatabase implements Heuristic {
+    private static final int MAGIC = 0x50444231; // "PDB1"
+    private static final int UNSET = 0xFF;
+    // Positions are packed in 5 bits each, blank position on top
+    private static final int POSITION_BITS = 5;
+    // Largest board whose positions fit in POSITION_BITS, e.g. 5x5
+    private static final int MAX_CELLS = 1 << POSITION_BITS;
+    private static final int MAX_TILES = 11;
+
+    private final int n;
+    private final Pattern[] patterns;
+    // Positions of the board being estimated, one array per thread, as
+    // parallel searches share the heuristic
+    private final ThreadLocal<int[]> scratch;
+
+    private PatternDatabase(Pattern[] patterns) {
+        this.patterns = patterns;
+        n = patterns[0].n;
+        final int cells = n * n;
+        scratch = new ThreadLocal<int[]>() {
+            @Override
+            protected int[] initialValue() {
+                return new int[cells];
+            }
+        };
+    }
+
+    // Loads and maps pattern databases of disjoint patterns
+    public static PatternDatabase load(String... files) throws IOException {
+        if (files.length == 0) {
+            throw new IllegalArgumentException();
+        }
+        Pattern[] patterns = new Pattern[files.length];
+        for (int i = 0; i < files.length; i++) {
+            patterns[i] = Pattern.load(new File(files[i]));
+        }
+        boolean[] used = new boolean[patterns[0].cells];
+        for (Pattern p : patterns) {
+            if (p.n != patterns[0].n) {
+                throw new IllegalArgumentException("Dimensions differ");
+            }
+            for (int tile : p.tiles) {
+                if (used[tile]) {
+                    throw new IllegalArgumentException(
+                        "Patterns overlap at tile " + tile);
+                }
+                used[tile] = true;
+            }
+        }
+        return new PatternDatabase(patterns);
+    }
+
+    @Override
+    public int estimate(TileGrid board) {
+        if (board.dimension() != n) {
+            throw new IllegalArgumentException();
+        }
+        int[] where = board.positions(scratch.get());
+        int sum = 0;
+        for (Pattern p : patterns) {
+            sum += p.lookup(where);
+        }
+        return sum;
+    }
+
+    // One pattern and its mapped table
+    private static final class Pattern {
+        private final int n;
+        private final int cells;
+        private final int[] tiles;
+        // weights[i] = (cells - 1 - i)! / (cells - k)!, for ranking
+        private final long[] weights;
+        private final long entries;
+        private MappedByteBuffer table;
+        private int offset;
+
+        Pattern(int n, int[] tiles) {
+            if (n < 2 || n * n > MAX_CELLS) {
+                throw new IllegalArgumentException("Pattern databases are"
+                    + " for boards of up to " + MAX_CELLS + " cells");
+            }
+            this.n = n;
+            cells = n * n;
+            this.tiles = tiles;
+            int k = tiles.length;
+            if (k < 1 || k > MAX_TILES || k >= cells) {
+                throw new IllegalArgumentException();
+            }
+            weights = new long[k];
+            long w = 1;
+            for (int i = k - 1; i >= 0; i--) {
+                weights[i] = w;
+                w *= cells - i;
+            }
+            entries = w;
+            for (int tile : tiles) {
+                if (tile < 1 || tile >= cells) {
+                    throw new IllegalArgumentException("Bad tile " + tile);
+                }
+            }
+        }
+
+        static Pattern load(File file) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                if (raf.readInt() != MAGIC) {
+                    throw new IOException("Not a pattern database: " + file);
+                }
+                int n = raf.readInt();
+                int[] tiles = new int[raf.readInt()];
+                for (int i = 0; i < tiles.length; i++) {
+                    tiles[i] = raf.readInt();
+                }
+                Pattern p = new Pattern(n, tiles);
+                p.offset = 4 * (3 + tiles.length);
+                if (raf.length() != p.offset + p.entries) {
+                    throw new IOException("Truncated pattern database: "
+                        + file);
+                }
+                // Mapping stays valid after the file is closed
+                p.table = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    0, raf.length());
+                return p;
+            } finally {
+                raf.close();
+            }
+        }
+
+        int lookup(int[] where) {
+            long rank = 0;
+            for (int i = 0; i < tiles.length; i++) {
+                int position = where[tiles[i]];
+                int smaller = 0;
+                for (int j = 0; j < i; j++) {
+                    if (where[tiles[j]] < position) {
+                        smaller++;
+                    }
+                }
+                rank += (position - smaller) * weights[i];
+            }
+            return table.get(offset + (int) rank) & 0xFF;
+        }
+
+        // Rank of pattern positions packed in state
+        long rank(long state) {
+            long rank = 0;
+            for (int i = 0; i < tiles.length; i++) {
+                int position = position(state, i);
+                int smaller = 0;
+                for (int j = 0; j < i; j++) {
+                    if (position(state, j) < position) {
+                        smaller++;
+                    }
+                }
+                rank += (position - smaller) * weights[i];
+            }
+            return rank;
+        }
+
+        // Breadth-first search from the goal over placements of pattern
+        // tiles and the blank. Blank moves over other tiles cost nothing,
+        // so each layer is first closed under free moves with a stack,
+        // before moving pattern tiles to the next layer.
+        byte[] generate() {
+            if (entries > Integer.MAX_VALUE
+                    || entries * cells / 64 >= Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Pattern too large");
+            }
+            byte[] table = new byte[(int) entries];
+            Arrays.fill(table, (byte) UNSET);
+            long[] visited = new long[(int) ((entries * cells + 63) / 64)];
+            LongList current = new LongList();
+            LongList next = new LongList();
+            long goal = withBlank(0, cells - 1);
+            for (int i = 0; i < tiles.length; i++) {
+                goal = withPosition(goal, i, tiles[i] - 1);
+            }
+            current.add(goal);
+            int[] occupant = new int[cells];
+            for (int depth = 0; current.size() > 0; depth++) {
+                while (current.size() > 0) {
+                    long state = current.pop();
+                    long rank = rank(state);
+                    int blank = blank(state);
+                    long bit = rank * cells + blank;
+                    int word = (int) (bit >>> 6);
+                    if ((visited[word] & (1L << bit)) != 0) {
+                        continue;
+                    }
+                    visited[word] |= 1L << bit;
+                    if ((table[(int) rank] & 0xFF) == UNSET) {
+                        table[(int) rank] = (byte) depth;
+                    }
+                    Arrays.fill(occupant, -1);
+                    for (int i = 0; i < tiles.length; i++) {
+                        occupant[position(state, i)] = i;
+                    }
+                    int row = blank / n;
+                    int col = blank % n;
+                    if (col > 0) {
+                        move(state, blank - 1, occupant, current, next);
+                    }
+                    if (col < n - 1) {
+                        move(state, blank + 1, occupant, current, next);
+                    }
+                    if (row > 0) {
+                        move(state, blank - n, occupant, current, next);
+                    }
+                    if (row < n - 1) {
+                        move(state, blank + n, occupant, current, next);
+                    }
+                }
+                LongList swap = current;
+                current = next;
+                next = swap;
+            }
+            return table;
+        }
+
+        // Moves blank to position to. Moving a pattern tile costs one move.
+        private void move(long state, int to, int[] occupant,
+                LongList free, LongList costly) {
+            int tile = occupant[to];
+            long child = withBlank(state, to);
+            if (tile == -1) {
+                free.add(child);
+            } else {
+                costly.add(withPosition(child, tile, blank(state)));
+            }
+        }
+
+        private int position(long state, int i) {
+            return (int) (state >>> (POSITION_BITS * i)) & 0x1F;
+        }
+
+        private long withPosition(long state, int i, int position) {
+            int shift = POSITION_BITS * i;
+            return state & ~(0x1FL << shift) | (long) position << shift;
+        }
+
+        private int blank(long state) {
+            return (int) (state >>> (POSITION_BITS * MAX_TILES)) & 0x1F;
+        }
+
+        private long withBlank(long state, int blank) {
+            return withPosition(state, MAX_TILES, blank);
+        }
+
+        void write(File file, byte[] table) throws IOException {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(n);
+                out.writeInt(tiles.length);
+                for (int tile : tiles) {
+                    out.writeInt(tile);
+                }
+                out.write(table);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    // Growable stack of longs for search layers
+    private static final class LongList {
+        private long[] items = new long[1024];
+        private int size;
+
+        void add(long item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, 2 * size);
+            }
+            items[size++] = item;
+        }
+
+        long pop() {
+            return items[--size];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    // Generates a pattern database file
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.out.println("Usage: <dimension> <tile,tile,...> <file.pdb>"
+                + "\nExample: 4 1,2,3,5,6,7 a.pdb");
+            return;
+        }
+        int n = Integer.parseInt(args[0]);
+        String[] parts = args[1].split(",");
+        int[] tiles = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            tiles[i] = Integer.parseInt(parts[i].trim());
+        }
+        Pattern pattern = new Pattern(n, tiles);
+        pattern.write(new File(args[2]), pattern.generate());
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// SearchBudget limits a search by boards expanded and by wall-clock time,
+// and lets another thread cancel it. A budget is for one search.
+//
+// The search checks its budget from SolverStats, once every CHECK_INTERVAL
+// expansions, so a check costs a volatile read and a counter update, and a
+// clock read only if there is a time limit. Once the budget is spent, the
+// check throws Exhausted, which unwinds the search, and Solver reports how
+// far it got. Limits are therefore kept to within CHECK_INTERVAL expansions.
+//
+// Threads of a parallel search share the budget, so the limit on expansions
+// is for all of them together.
+public final class SearchBudget {
+    // Expansions between checks, a power of 2
+    static final int CHECK_INTERVAL = 1 << 8;
+
+    // Why a search stopped early
+    public enum Reason {
+        CANCELLED, TIMED_OUT, NODE_LIMIT
+    }
+
+    // Thrown through the search when the budget is spent. It has no stack
+    // trace, as it is always caught by Solver.
+    static final class Exhausted extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Exhausted(Reason reason) {
+            super("Search stopped: " + reason, null, false, false);
+        }
+    }
+
+    private final long maxExpanded;
+    private final long timeoutNanos;
+    private final AtomicLong expanded = new AtomicLong();
+    private long deadline;
+    private boolean isStarted;
+    private volatile Reason reason;
+
+    // No limits, only cancel()
+    public SearchBudget() {
+        this(0, 0);
+    }
+
+    // At most about maxExpanded boards expanded, and timeoutMillis from the
+    // start of the search. 0 means no limit.
+    public SearchBudget(long maxExpanded, long timeoutMillis) {
+        if (maxExpanded < 0 || timeoutMillis < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.maxExpanded = maxExpanded;
+        timeoutNanos = timeoutMillis * 1000000L;
+    }
+
+    // Stops the search at its next check, from any thread
+    public void cancel() {
+        stop(Reason.CANCELLED);
+    }
+
+    public boolean isCancelled() {
+        return reason == Reason.CANCELLED;
+    }
+
+    // Why the search stopped early, or null if it didn't
+    public Reason reason() {
+        return reason;
+    }
+
+    // Starts the clock, when the search starts
+    synchronized void start() {
+        if (isStarted) {
+            throw new IllegalStateException("Budget already used");
+        }
+        isStarted = true;
+        deadline = System.nanoTime() + timeoutNanos;
+    }
+
+    // Called every CHECK_INTERVAL expansions. Throws Exhausted once the
+    // budget is spent.
+    void check() {
+        if (reason != null) {
+            throw new Exhausted(reason);
+        }
+        if (maxExpanded != 0
+                && expanded.addAndGet(CHECK_INTERVAL) >= maxExpanded) {
+            stop(Reason.NODE_LIMIT);
+        } else if (timeoutNanos != 0 && System.nanoTime() - deadline >= 0) {
+            stop(Reason.TIMED_OUT);
+        } else {
+            return;
+        }
+        throw new Exhausted(reason);
+    }
+
+    // Keeps the first reason
+    private synchronized void stop(Reason why) {
+        if (reason == null) {
+            reason = why;
+        }
+    }
+}
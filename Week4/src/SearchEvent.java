@@ -0,0 +1,48 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// SearchEvent is a Java Flight Recorder event for one solve, with its
+// duration and SolverStats counts. It is only committed while a recording
+// has it enabled, so it costs next to nothing otherwise.
+//
+// Record with e.g. java -XX:StartFlightRecording:filename=solve.jfr Solver
+@Name("puzzle.Search")
+@Label("Puzzle Search")
+@Category("Puzzle")
+@Description("One run of Solver")
+final class SearchEvent extends Event {
+    @Label("Mode")
+    String mode;
+
+    @Label("Dimension")
+    int dimension;
+
+    @Label("Moves")
+    int moves;
+
+    @Label("Complete")
+    boolean isComplete;
+
+    @Label("Expanded")
+    long expanded;
+
+    @Label("Generated")
+    long generated;
+
+    @Label("Duplicates")
+    long duplicates;
+
+    @Label("Peak Open")
+    long peakOpen;
+
+    @Label("Peak Closed")
+    long peakClosed;
+
+    @Label("Heuristic Time")
+    @Timespan
+    long heuristicNanos;
+}
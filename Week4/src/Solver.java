@@ -1,112 +1,391 @@
-import java.util.Comparator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 import edu.princeton.cs.algs4.In;
-import edu.princeton.cs.algs4.MinPQ;
-import edu.princeton.cs.algs4.Stack;
 import edu.princeton.cs.algs4.StdOut;
 
 // Solver uses best-first search algorithm A*, to solve the puzzle in smallest
-// possible number of moves.
+// possible number of moves. Alternatively, Mode.IDA_STAR uses iterative
+// deepening A*, which finds an equally short solution in memory proportional
+// to solution length, for boards where A* runs out of memory. Mode.PARALLEL
+// runs hash-distributed A* on all processors, see ParallelSearch, and
+// Mode.BIDIRECTIONAL searches from both ends, see BidirectionalSearch.
+// Mode.EXTERNAL keeps the search on disk, for boards up to 5x5 that don't
+// fit in memory, see ExternalSearch.
+//
+// Mode.WEIGHTED and Mode.ANYTIME find a solution faster, which need not be
+// shortest: weighted A* finds one at most weight times as long as shortest,
+// and anytime search improves on it until its time is up, see
+// WeightedSearch. moves() is then the length of the best solution found,
+// and lowerBound() the fewest moves a solution can have.
+//
+// Heuristic used for the priority is pluggable: Manhattan distance by
+// default, LinearConflict, or PatternDatabase for hard 4x4 boards.
+//
+// Boards already reached are kept in a closed set, a StateTable keyed by
+// board key, with the fewest moves found to each board. A board is enqueued
+// again only if it is reached with fewer moves than before, so the search
+// doesn't expand the same composition over and over.
+//
+// Open boards are kept in a BucketQueue by priority, and among equal
+// priority, boards with lower estimate come first.
+//
+// Every mode counts its work in SolverStats, and every solve is reported as
+// a SearchEvent to Java Flight Recorder, when it is recording.
+//
+// Search runs in the constructor. A SearchBudget limits it by boards
+// expanded and by time, and can cancel it from another thread. A search
+// stopped early is not complete: it has no solution, except for anytime
+// search, which keeps the best one found, and lowerBound() and stats() tell
+// how far it got. solveAsync() runs a search on an executor, and cancelling
+// its future cancels the search.
 //
 // http://coursera.cs.princeton.edu/algs4/assignments/8puzzle.html
 // http://coursera.cs.princeton.edu/algs4/checklists/8puzzle.html
 
 public final class Solver {
+    // Weight and time budget of the bounded-suboptimal modes
+    public static final double DEFAULT_WEIGHT = 2;
+    public static final long DEFAULT_BUDGET_MILLIS = 1000;
+
     private boolean isSolvable;
     private int moves = -1;
-    private Stack<Board> solution = new Stack<Board>();
+    private int lowerBound = -1;
+    private final Board initial;
+    // Moves of the solution; boards are made from them while iterating
+    private MoveList path;
+    private final Heuristic heuristic;
+    private final SolverStats stats;
+    private final double weight;
+    private final long budgetMillis;
+    private final SolutionListener listener;
+    private final SearchBudget budget;
+    private boolean isComplete = true;
+
+    // Search algorithm
+    public enum Mode {
+        ASTAR, IDA_STAR, PARALLEL, BIDIRECTIONAL, EXTERNAL, WEIGHTED, ANYTIME;
+
+        // Does the mode always find a shortest solution?
+        public boolean isOptimal() {
+            return this != WEIGHTED && this != ANYTIME;
+        }
+    };
+
+    // Called by anytime search with each shorter solution, and the fewest
+    // moves a solution can have as proven so far
+    public interface SolutionListener {
+        void improved(MoveList path, int lowerBound);
+    }
 
     // SearchNode represents a particular composition of tiles, that can be
-    // reached from the initial board. SearchNode keeps track of predecessor,
-    // so that already processed board is not processed twice, actual board
-    // composition, and number of moves needed to reach this board.
+    // reached from the initial board, and number of moves needed to reach
+    // it. There is no link to the predecessor: the solution is traced back
+    // through the closed set, so expanded nodes can be collected.
     private class SearchNode {
         Board board;
-        SearchNode predecessor;
         int moves;
-        int manhattan;
+        int estimate;
 
-        SearchNode(Board board, SearchNode predecessor, int moves) {
+        SearchNode(Board board, int moves) {
             this.board = board;
-            this.predecessor = predecessor;
             this.moves = moves;
-            manhattan = board.manhattan();
+            estimate = stats.estimate(heuristic, board);
         }
 
         int priority() {
-            return moves + manhattan;
+            return moves + estimate;
         }
     }
 
-    // SearchNodeComparator calculates comparative priority for two
-    // search nodes. Needed for Priority Queue.
-    private class SearchNodeComparator implements Comparator<SearchNode> {
-        @Override
-        public int compare(SearchNode a, SearchNode b) {
-            return a.priority() - b.priority();
-        }
+    // Solvability is decided up front from the parity of the board, so
+    // search only runs for solvable boards.
+    public Solver(Board initial) {
+        this(initial, Heuristic.MANHATTAN);
     }
 
-    // Solver class has two priority queues, one for initial board, and
-    // another for its twin board. If a board is unsolvable, interestingly its
-    // twin board is solvable, and vice versa.
-    // 
-    public Solver(Board initial) {
-        if (initial == null) {
+    public Solver(Board initial, Heuristic heuristic) {
+        this(initial, heuristic, Mode.ASTAR);
+    }
+
+    public Solver(Board initial, Heuristic heuristic, Mode mode) {
+        this(initial, heuristic, mode, new SolverStats());
+    }
+
+    // Solves and counts the work in stats. Bounded-suboptimal modes use
+    // DEFAULT_WEIGHT and DEFAULT_BUDGET_MILLIS.
+    public Solver(Board initial, Heuristic heuristic, Mode mode,
+            SolverStats stats) {
+        this(initial, heuristic, mode, stats, new SearchBudget());
+    }
+
+    // Solves until done or budget is spent, see isComplete()
+    public Solver(Board initial, Heuristic heuristic, Mode mode,
+            SolverStats stats, SearchBudget budget) {
+        this(initial, heuristic, mode, stats, DEFAULT_WEIGHT,
+            DEFAULT_BUDGET_MILLIS, null, budget);
+    }
+
+    // Weighted A*: solution at most weight times as long as a shortest one
+    public Solver(Board initial, Heuristic heuristic, double weight) {
+        this(initial, heuristic, Mode.WEIGHTED, new SolverStats(), weight, 0,
+            null, new SearchBudget());
+    }
+
+    // Anytime search: shorter and shorter solutions, reported to listener,
+    // until budgetMillis runs out. If none was found in time, moves() is -1
+    // and solution() is null, though the board is solvable.
+    public Solver(Board initial, Heuristic heuristic, long budgetMillis,
+            SolutionListener listener) {
+        this(initial, heuristic, Mode.ANYTIME, new SolverStats(),
+            DEFAULT_WEIGHT, budgetMillis, listener, new SearchBudget());
+    }
+
+    private Solver(Board initial, Heuristic heuristic, Mode mode,
+            SolverStats stats, double weight, long budgetMillis,
+            SolutionListener listener, SearchBudget budget) {
+        if (initial == null || heuristic == null || mode == null
+                || stats == null || !(weight >= 1) || budgetMillis < 0
+                || budget == null) {
             throw new IllegalArgumentException();
         }
+        this.initial = initial;
+        this.heuristic = heuristic;
+        this.stats = stats;
+        this.weight = weight;
+        this.budgetMillis = budgetMillis;
+        this.listener = listener;
+        this.budget = budget;
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        budget.start();
+        stats.limit(budget);
+        stats.start();
+        isSolvable = isSolvable(initial);
+        if (isSolvable) {
+            stats.bound(heuristic.estimate(initial));
+            try {
+                if (budget.isCancelled()) {
+                    isComplete = false;
+                } else {
+                    search(initial, mode);
+                }
+            } catch (SearchBudget.Exhausted e) {
+                isComplete = false;
+                path = null;
+            }
+            if (!isComplete && path == null) {
+                lowerBound = stats.bound();
+            }
+            if (path != null) {
+                moves = path.size();
+            }
+            if (mode.isOptimal() && isComplete) {
+                lowerBound = moves;
+            }
+        }
+        stats.finish();
+        event.end();
+        if (event.shouldCommit()) {
+            event.mode = mode.name();
+            event.dimension = initial.dimension();
+            event.moves = moves;
+            event.isComplete = isComplete;
+            event.expanded = stats.expanded();
+            event.generated = stats.generated();
+            event.duplicates = stats.duplicates();
+            event.peakOpen = stats.peakOpen();
+            event.peakClosed = stats.peakClosed();
+            event.heuristicNanos = stats.heuristicNanos();
+            event.commit();
+        }
+    }
 
-        Comparator<SearchNode> comparator = new SearchNodeComparator();
-        MinPQ<SearchNode> queue = new MinPQ<SearchNode>(comparator);
-        MinPQ<SearchNode> twinQ = new MinPQ<SearchNode>(comparator);
-        SearchNode node, twin;
-        queue.insert(new SearchNode(initial, null, 0));
-        twinQ.insert(new SearchNode(initial.twin(), null, 0));
+    private void search(Board initial, Mode mode) {
+        if (mode == Mode.IDA_STAR) {
+            idaStar(initial);
+        } else if (mode == Mode.PARALLEL) {
+            parallel(initial);
+        } else if (mode == Mode.BIDIRECTIONAL) {
+            bidirectional(initial);
+        } else if (mode == Mode.EXTERNAL) {
+            external(initial);
+        } else if (mode == Mode.WEIGHTED) {
+            WeightedSearch search = new WeightedSearch(initial, heuristic,
+                stats);
+            path = search.solve(weight);
+            lowerBound = search.lowerBound();
+        } else if (mode == Mode.ANYTIME) {
+            WeightedSearch search = new WeightedSearch(initial, heuristic,
+                stats);
+            path = search.anytime(budgetMillis * 1000000L, listener);
+            lowerBound = search.lowerBound();
+            // best solution so far, if any, is kept
+            if (search.isTimedOut()) {
+                isComplete = false;
+            }
+        } else {
+            aStar(initial);
+        }
+    }
+
+    private void aStar(Board initial) {
+        BucketQueue<SearchNode> queue = new BucketQueue<SearchNode>();
+        final StateTable closed = new StateTable();
+        SearchNode node = new SearchNode(initial, 0);
+        queue.insert(node, node.priority(), node.estimate);
+        closed.put(initial.key(), 0);
 
-        // Try to solve both initial board and twin board. 
-        // Only one can be solved.
         while (true) {
-            node = queue.delMin();
-            twin = twinQ.delMin();
+            node = nextNode(queue, closed);
             if (node.board.isGoal()) {
-                isSolvable = true;
-                break;
-            } else if (twin.board.isGoal()) {
-                isSolvable = false;
                 break;
             }
-            insertNeighbors(node, queue);
-            insertNeighbors(twin, twinQ);
+            insertNeighbors(node, queue, closed);
         }
 
-        if (!isSolvable) {
-            return;
+        path = MoveList.backtrack(node.board, new ToIntFunction<Board>() {
+            @Override
+            public int applyAsInt(Board board) {
+                return closed.get(board.key());
+            }
+        });
+    }
+
+    private void idaStar(Board initial) {
+        path = MoveList.of(new IdaStar(initial, heuristic, stats).solve());
+    }
+
+    private void external(Board initial) {
+        try {
+            path = MoveList.of(
+                new ExternalSearch(initial, heuristic, stats).solve());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        
-        // Construct solution stack, beginning from solved board
-        while (true) {
-            if (node == null) {
-                break;
+    }
+
+    private void parallel(Board initial) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            path = new ParallelSearch(heuristic, threads, stats)
+                .solve(initial);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Search interrupted", e);
+        }
+    }
+
+    private void bidirectional(Board initial) {
+        path = new BidirectionalSearch(initial, heuristic, stats).solve();
+    }
+
+    // A move swaps the empty slot with a tile. A horizontal move keeps the
+    // order of tiles, and a vertical move passes n - 1 tiles. On boards of
+    // odd dimension, parity of inversions never changes, and must be even
+    // like in the goal. On boards of even dimension, parity of inversions
+    // changes with every row the empty slot moves, so parity of inversions
+    // plus blank row must be that of the goal, where it is n - 1.
+    //
+    // Inversions are counted with a Fenwick tree over tile values, in
+    // O(n^2 log n): scanning from the end, each tile's inversions are the
+    // smaller tiles already seen.
+    static boolean isSolvable(Board board) {
+        int n = board.dimension();
+        int cells = n * n;
+        int[] tree = new int[cells];
+        long inversions = 0;
+        for (int i = cells - 1; i >= 0; i--) {
+            int val = board.tile(i);
+            if (val == 0) {
+                continue;
             }
-            solution.push(node.board);
-            node = node.predecessor;
+            // count tiles 1..val-1 seen so far
+            for (int k = val - 1; k > 0; k -= k & -k) {
+                inversions += tree[k];
+            }
+            for (int k = val; k < cells; k += k & -k) {
+                tree[k]++;
+            }
+        }
+        if (n % 2 == 1) {
+            return inversions % 2 == 0;
         }
+        return (inversions + board.blank() / n) % 2 == (n - 1) % 2;
+    }
 
-        moves = solution.size() - 1;
+    // Removes the node with smallest priority from queue. Nodes superseded by
+    // a shorter path to the same board are skipped.
+    private SearchNode nextNode(BucketQueue<SearchNode> queue,
+            StateTable closed) {
+        while (true) {
+            SearchNode node = queue.delMin();
+            if (closed.get(node.board.key()) == node.moves) {
+                // shortest solution is at least the smallest priority
+                stats.bound(node.priority());
+                stats.countExpanded();
+                return node;
+            }
+        }
     }
 
-    // Inserts neighbor boards to priority queue
-    private void insertNeighbors(SearchNode node, MinPQ<SearchNode> queue) {
+    // Inserts neighbor boards to priority queue, unless they have already
+    // been reached with as few moves. This also skips the preceding board.
+    private void insertNeighbors(SearchNode node,
+            BucketQueue<SearchNode> queue, StateTable closed) {
         Iterable<Board> neighbors = node.board.neighbors();
+        int moves = node.moves + 1;
         for (Board neighbor : neighbors) {
-            // don't enqueue preceding board
-            if (node.predecessor != null 
-                    && neighbor.equals(node.predecessor.board)) {
+            stats.countGenerated();
+            long key = neighbor.key();
+            int known = closed.get(key);
+            if (known != -1 && known <= moves) {
+                stats.countDuplicate();
                 continue;
             }
-            SearchNode newNode = new SearchNode(neighbor, node, node.moves + 1);
-            queue.insert(newNode);
+            closed.put(key, moves);
+            SearchNode next = new SearchNode(neighbor, moves);
+            queue.insert(next, next.priority(), next.estimate);
         }
+        stats.open(queue.size());
+        stats.closed(closed.size());
+    }
+
+    // Solves on executor. Cancelling the future cancels the search, which
+    // stops within SearchBudget.CHECK_INTERVAL expansions. If budget is
+    // spent, the future completes with a Solver that is not complete.
+    public static CompletableFuture<Solver> solveAsync(final Board initial,
+            final Heuristic heuristic, final Mode mode,
+            final SearchBudget budget, Executor executor) {
+        if (initial == null || heuristic == null || mode == null
+                || budget == null || executor == null) {
+            throw new IllegalArgumentException();
+        }
+        CompletableFuture<Solver> future = CompletableFuture.supplyAsync(
+            new Supplier<Solver>() {
+                @Override
+                public Solver get() {
+                    return new Solver(initial, heuristic, mode,
+                        new SolverStats(), budget);
+                }
+            }, executor);
+        future.whenComplete(new BiConsumer<Solver, Throwable>() {
+            @Override
+            public void accept(Solver solver, Throwable e) {
+                if (e instanceof CancellationException) {
+                    budget.cancel();
+                }
+            }
+        });
+        return future;
     }
 
     // Is initial board solvable?
@@ -114,24 +393,122 @@ public final class Solver {
         return isSolvable;
     }
 
-    // Number of moves to solution
+    // Did the search run to the end, rather than stop when its budget was
+    // spent? If not, solution() is null, though the board is solvable,
+    // except for Mode.ANYTIME, which keeps the best solution found in time.
+    // Anytime search is complete only once it has proven its solution
+    // shortest; weighted search is complete with any solution.
+    public boolean isComplete() {
+        return isComplete;
+    }
+
+    // Number of moves to solution, the best found by bounded-suboptimal
+    // modes
     public int moves() {
         return moves;
     }
 
-    // Sequence of boards in a shortest solution; null if unsolvable
+    // Work done by the search
+    public SolverStats stats() {
+        return stats;
+    }
+
+    // Fewest moves a solution can have: moves() for optimal modes, and as
+    // proven by the search for others or if it isn't complete; -1 if
+    // unsolvable
+    public int lowerBound() {
+        return lowerBound;
+    }
+
+    // Moves of the empty slot in a shortest solution; null if unsolvable
+    public MoveList path() {
+        return path;
+    }
+
+    // Sequence of boards in a shortest solution; null if unsolvable.
+    // Boards are made one at a time from the moves, as they are iterated.
     public Iterable<Board> solution() {
-        if (solution.isEmpty()) {
+        if (path == null) {
             return null;
         }
-        return solution;
-    } 
+        return new Iterable<Board>() {
+            @Override
+            public Iterator<Board> iterator() {
+                return new SolutionIterator();
+            }
+        };
+    }
 
-    // Use this with test files provided at 
-    // http://coursera.cs.princeton.edu/algs4/checklists/8puzzle.html
-    public static void main(String[] args) {
-        // create initial board from file
-        In in = new In(args[0]);
+    private class SolutionIterator implements Iterator<Board> {
+        private Board board = initial;
+        private int next;
+
+        @Override
+        public boolean hasNext() {
+            return next <= path.size();
+        }
+
+        @Override
+        public Board next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Board current = board;
+            if (next < path.size()) {
+                board = board.move(path.get(next));
+            }
+            next++;
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    // Heuristic by name: manhattan, linear, or comma separated list of
+    // pattern database files
+    static Heuristic heuristic(String name) throws IOException {
+        if (name.equals("manhattan")) {
+            return Heuristic.MANHATTAN;
+        }
+        if (name.equals("linear")) {
+            return new LinearConflict();
+        }
+        return PatternDatabase.load(name.split(","));
+    }
+
+    // Search mode by name: astar, idastar, parallel, bidirectional,
+    // external, weighted or anytime
+    static Mode mode(String name) {
+        if (name.equals("astar")) {
+            return Mode.ASTAR;
+        }
+        if (name.equals("idastar")) {
+            return Mode.IDA_STAR;
+        }
+        if (name.equals("parallel")) {
+            return Mode.PARALLEL;
+        }
+        if (name.equals("bidirectional")) {
+            return Mode.BIDIRECTIONAL;
+        }
+        if (name.equals("external")) {
+            return Mode.EXTERNAL;
+        }
+        if (name.equals("weighted")) {
+            return Mode.WEIGHTED;
+        }
+        if (name.equals("anytime")) {
+            return Mode.ANYTIME;
+        }
+        throw new IllegalArgumentException("Unknown mode " + name);
+    }
+
+    // Board from a puzzle file: dimension n, followed by n rows of tiles
+    static Board readBoard(String file) {
+        In in = new In(file);
         int n = in.readInt();
         int[][] blocks = new int[n][n];
 
@@ -140,19 +517,65 @@ public final class Solver {
                 blocks[i][j] = in.readInt();
             }
         }
+        in.close();
+        return new Board(blocks);
+    }
 
-        Board initial = new Board(blocks);
+    // Use this with test files provided at 
+    // http://coursera.cs.princeton.edu/algs4/checklists/8puzzle.html
+    //
+    // Usage: <file.txt> [manhattan | linear | <file.pdb>,<file.pdb>,...]
+    //        [astar | idastar | parallel | bidirectional | external
+    //         | weighted [weight] | anytime [milliseconds]]
+    public static void main(String[] args) throws IOException {
+        // create initial board from file
+        Board initial = readBoard(args[0]);
         System.out.println(initial.toString());
         System.out.println("--");
 
         // solve the puzzle
-        Solver solver = new Solver(initial);
+        Heuristic heuristic = Heuristic.MANHATTAN;
+        if (args.length > 1) {
+            heuristic = heuristic(args[1]);
+        }
+        Mode mode = Mode.ASTAR;
+        if (args.length > 2) {
+            mode = mode(args[2]);
+        }
+        Solver solver;
+        if (mode == Mode.WEIGHTED && args.length > 3) {
+            solver = new Solver(initial, heuristic,
+                Double.parseDouble(args[3]));
+        } else if (mode == Mode.ANYTIME) {
+            long budget = DEFAULT_BUDGET_MILLIS;
+            if (args.length > 3) {
+                budget = Long.parseLong(args[3]);
+            }
+            solver = new Solver(initial, heuristic, budget,
+                new SolutionListener() {
+                    @Override
+                    public void improved(MoveList path, int lowerBound) {
+                        StdOut.println("Found " + path.size()
+                            + " moves, lower bound " + lowerBound);
+                    }
+                });
+        } else {
+            solver = new Solver(initial, heuristic, mode);
+        }
 
         // print solution to standard output
         if (!solver.isSolvable()) {
             StdOut.println("No solution possible");
+        } else if (solver.solution() == null) {
+            StdOut.println("No solution found in time, lower bound = "
+                + solver.lowerBound());
         } else {
-            StdOut.println("Minimum number of moves = " + solver.moves());
+            if (mode.isOptimal()) {
+                StdOut.println("Minimum number of moves = " + solver.moves());
+            } else {
+                StdOut.println("Number of moves = " + solver.moves()
+                    + ", lower bound = " + solver.lowerBound());
+            }
             for (Board board : solver.solution()) {
                 StdOut.println(board);
             }
@@ -0,0 +1,214 @@
+// SolverStats counts the work of one search: boards expanded and generated,
+// duplicates pruned, peak size of the open list and the closed set, and
+// time spent in search and in the heuristic. bound() is the highest f-bound
+// the search has got past, so a search stopped early still tells how long
+// a solution must at least be.
+//
+// Counting is a plain field increment, so stats are always collected. Timing
+// every heuristic call costs two clock reads, so it is only done when timing
+// is enabled. A progress listener, if any, is called from the searching
+// thread about every interval, with the counts so far.
+//
+// Searches on several threads count in a SolverStats per thread, and add
+// them together at the end. Progress is not reported for those.
+//
+// A SearchBudget, if any, is checked from countExpanded(), so every search
+// can be stopped without checks of its own.
+public final class SolverStats {
+    // Expansions between clock reads for progress
+    private static final int PROGRESS_CHECK_INTERVAL = 1 << 12;
+    // Rough heap bytes of an open node with its board, and of a closed
+    // set entry at half load
+    private static final long OPEN_NODE_BYTES = 96;
+    private static final long CLOSED_ENTRY_BYTES = 24;
+
+    // Called with stats of a running search
+    public interface ProgressListener {
+        void progress(SolverStats stats);
+    }
+
+    private final boolean isTimed;
+    private final ProgressListener listener;
+    private final long intervalNanos;
+    private long nextProgress;
+    private SearchBudget budget;
+
+    private long expanded;
+    private long generated;
+    private long duplicates;
+    private long peakOpen;
+    private long peakClosed;
+    private int bound;
+    private long heuristicNanos;
+    private long startNanos;
+    private long elapsedNanos;
+
+    // Counts only, without timing of the heuristic
+    public SolverStats() {
+        this(false, null, 0);
+    }
+
+    // Counts, and times heuristic calls if isTimed. Calls listener about
+    // every intervalMillis, if listener is not null.
+    public SolverStats(boolean isTimed, ProgressListener listener,
+            long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.isTimed = isTimed;
+        this.listener = listener;
+        intervalNanos = intervalMillis * 1000000L;
+    }
+
+    // Empty stats for a thread of a parallel search
+    SolverStats forThread() {
+        SolverStats stats = new SolverStats(isTimed, null, 0);
+        stats.budget = budget;
+        return stats;
+    }
+
+    // Search is stopped once budget is spent
+    void limit(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    public long expanded() {
+        return expanded;
+    }
+
+    public long generated() {
+        return generated;
+    }
+
+    // Boards generated again with no fewer moves, and dropped
+    public long duplicates() {
+        return duplicates;
+    }
+
+    public long peakOpen() {
+        return peakOpen;
+    }
+
+    public long peakClosed() {
+        return peakClosed;
+    }
+
+    // Highest f-bound reached: no solution has fewer moves. Parallel search
+    // only tells the estimate of the initial board.
+    public int bound() {
+        return bound;
+    }
+
+    // Time spent in heuristic, 0 unless timed
+    public long heuristicNanos() {
+        return heuristicNanos;
+    }
+
+    // Time since start, or of the whole search once finished
+    public long elapsedNanos() {
+        if (elapsedNanos == 0 && startNanos != 0) {
+            return System.nanoTime() - startNanos;
+        }
+        return elapsedNanos;
+    }
+
+    public double nodesPerSecond() {
+        long nanos = elapsedNanos();
+        if (nanos == 0) {
+            return 0;
+        }
+        return expanded * 1e9 / nanos;
+    }
+
+    // Rough estimate of heap used by open list and closed set at their peak
+    public long estimatedBytes() {
+        return peakOpen * OPEN_NODE_BYTES + peakClosed * CLOSED_ENTRY_BYTES;
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+        nextProgress = startNanos + intervalNanos;
+    }
+
+    void finish() {
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    void countExpanded() {
+        expanded++;
+        if (budget != null
+                && (expanded & (SearchBudget.CHECK_INTERVAL - 1)) == 0) {
+            budget.check();
+        }
+        if (listener != null
+                && (expanded & (PROGRESS_CHECK_INTERVAL - 1)) == 0) {
+            long now = System.nanoTime();
+            if (now - nextProgress >= 0) {
+                nextProgress = now + intervalNanos;
+                listener.progress(this);
+            }
+        }
+    }
+
+    void countGenerated() {
+        generated++;
+    }
+
+    void countDuplicate() {
+        duplicates++;
+    }
+
+    // Records current size of the open list
+    void open(long size) {
+        if (size > peakOpen) {
+            peakOpen = size;
+        }
+    }
+
+    // Records that no solution has fewer than f moves
+    void bound(int f) {
+        if (f > bound) {
+            bound = f;
+        }
+    }
+
+    // Records current size of the closed set
+    void closed(long size) {
+        if (size > peakClosed) {
+            peakClosed = size;
+        }
+    }
+
+    // Estimate of board by heuristic, timed if enabled
+    int estimate(Heuristic heuristic, TileGrid board) {
+        if (!isTimed) {
+            return heuristic.estimate(board);
+        }
+        long start = System.nanoTime();
+        int estimate = heuristic.estimate(board);
+        heuristicNanos += System.nanoTime() - start;
+        return estimate;
+    }
+
+    // Adds counts of a thread of a parallel search. Peaks are added too, as
+    // the threads hold their open lists and closed sets at the same time.
+    void add(SolverStats other) {
+        expanded += other.expanded;
+        generated += other.generated;
+        duplicates += other.duplicates;
+        peakOpen += other.peakOpen;
+        peakClosed += other.peakClosed;
+        bound = Math.max(bound, other.bound);
+        heuristicNanos += other.heuristicNanos;
+    }
+
+    public String toString() {
+        return "expanded " + expanded + ", generated " + generated
+            + ", duplicates " + duplicates + ", peak open " + peakOpen
+            + ", peak closed " + peakClosed + ", bound " + bound + ", "
+            + Math.round(nodesPerSecond()) + " nodes/s, "
+            + elapsedNanos() / 1000000 + " ms, heuristic "
+            + heuristicNanos / 1000000 + " ms, ~"
+            + (estimatedBytes() >> 20) + " MB";
+    }
+}
@@ -0,0 +1,65 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class SolverTest {
+
+    // puzzle4x4-40a, 40 moves
+    private static final int[][] FORTY = {
+        {9, 1, 6, 7},
+        {13, 2, 14, 8},
+        {11, 5, 0, 12},
+        {10, 4, 15, 3}
+    };
+
+    // puzzle4x4-30a, whose first anytime pass expands over 1024 boards
+    private static final int[][] THIRTY = {
+        {1, 5, 7, 2},
+        {9, 3, 15, 4},
+        {0, 13, 8, 11},
+        {14, 10, 6, 12}
+    };
+
+    @Test
+    void anytimeKeepsBestSolutionWhenBudgetRunsOut() {
+        Board board = new Board(FORTY);
+        Heuristic heuristic = new LinearConflict();
+        SolverStats all = new SolverStats();
+        Solver full = new Solver(board, heuristic, Solver.Mode.ANYTIME, all,
+            new SearchBudget());
+        assertTrue(full.isComplete());
+        assertEquals(40, full.moves());
+
+        // Out of budget after the first solution, before the last
+        long first = new Solver(board, heuristic, 3.0).stats().expanded();
+        long limit = first + 2 * SearchBudget.CHECK_INTERVAL;
+        assertTrue(limit < all.expanded());
+        Solver solver = new Solver(board, heuristic, Solver.Mode.ANYTIME,
+            new SolverStats(), new SearchBudget(limit, 0));
+        assertFalse(solver.isComplete());
+        assertNotNull(solver.solution());
+        assertTrue(solver.moves() >= 40);
+        assertTrue(solver.lowerBound() > 0);
+        assertTrue(solver.lowerBound() <= 40);
+    }
+
+    @Test
+    void anytimeTimedOutBeforeFirstSolution() {
+        Solver solver = new Solver(new Board(THIRTY), new LinearConflict(),
+            0, null);
+        assertTrue(solver.isSolvable());
+        assertFalse(solver.isComplete());
+        assertNull(solver.solution());
+        assertEquals(-1, solver.moves());
+        assertTrue(solver.lowerBound() > 0);
+    }
+
+    @Test
+    void anytimeCompleteOnlyOnceShortest() {
+        Solver solver = new Solver(new Board(FORTY), new LinearConflict(),
+            60000, null);
+        assertTrue(solver.isComplete());
+        assertEquals(40, solver.moves());
+        assertEquals(40, solver.lowerBound());
+    }
+}
@@ -0,0 +1,78 @@
+// StateTable maps board keys to the smallest number of moves found to reach
+// the board. It is the closed set (transposition table) of the search.
+//
+// Table uses open addressing with linear probing over two primitive arrays,
+// so that an entry takes 12 bytes, instead of a boxed key, a boxed value and
+// a map entry. Values are stored plus one, so that 0 marks an empty slot, and
+// any long can be a key.
+final class StateTable {
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    StateTable() {
+        keys = new long[INITIAL_CAPACITY];
+        values = new int[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Value for key, or -1 if key is not in table
+    int get(long key) {
+        for (int i = slot(key); values[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    void put(long key, int value) {
+        int i = slot(key);
+        while (values[i] != 0) {
+            if (keys[i] == key) {
+                values[i] = value + 1;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value + 1;
+        size++;
+        // Keep table at most half full
+        if (2 * size > keys.length) {
+            resize(2 * keys.length);
+        }
+    }
+
+    // Keys may be packed tiles rather than random, so mix the bits first
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] == 0) {
+                continue;
+            }
+            int i = slot(oldKeys[j]);
+            while (values[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+}
@@ -0,0 +1,22 @@
+// TileGrid is the read-only view of a tile composition, shared by the
+// immutable Board and the MutableBoard used for in-place search, so that
+// heuristics work on both.
+abstract class TileGrid {
+    abstract int dimension();
+
+    // Tile at row-major index, 0 for the empty slot
+    abstract int tile(int index);
+
+    // Sum of Manhattan distances of tiles from their goal positions
+    abstract int manhattan();
+
+    // Row-major index of every tile, indexed by tile. Callers must not
+    // modify the array.
+    abstract int[] positions();
+
+    // Same as positions(), but a grid that doesn't keep them fills scratch,
+    // an array of dimension()^2 ints, instead of allocating one
+    int[] positions(int[] scratch) {
+        return positions();
+    }
+}
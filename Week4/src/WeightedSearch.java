@@ -0,0 +1,182 @@
+import java.util.function.ToIntFunction;
+
+// WeightedSearch trades solution length for speed. Weighted A* orders boards
+// by f = g + w * h, which trusts the estimate more and dives towards the
+// goal. With an admissible heuristic, the solution found is at most w times
+// as long as a shortest one, so the shortest is at least cost / w moves.
+//
+// Weights are kept in sixteenths, so that priorities stay integers for the
+// BucketQueue. They are rounded down, so the search never trusts the
+// estimate more than asked, and the bound holds for the weight given.
+//
+// The anytime search runs weighted A* again and again with a decreasing
+// weight, like ARA*, until its time is up. Each run prunes boards whose
+// g + h is not below the best cost so far, so it only ever reports shorter
+// solutions. A run that ends without a solution has shown there is no
+// shorter one, and so has a run with weight 1, which is plain A*. Either
+// way, the best solution is then a shortest one. If time or the SearchBudget
+// runs out first, the best solution so far is kept, and the search is timed
+// out.
+final class WeightedSearch {
+    private static final int SCALE = 16;
+    // Weights of the anytime search
+    private static final double START_WEIGHT = 3;
+    private static final double WEIGHT_STEP = 0.5;
+    // Expansions between clock reads
+    private static final int DEADLINE_CHECK_INTERVAL = 1 << 10;
+
+    private final Board initial;
+    private final Heuristic heuristic;
+    private final SolverStats stats;
+    private boolean hasDeadline;
+    private long deadline;
+    private boolean isTimedOut;
+    private int lowerBound;
+
+    // Board with the moves it was reached in
+    private static final class Node {
+        final Board board;
+        final int moves;
+
+        Node(Board board, int moves) {
+            this.board = board;
+            this.moves = moves;
+        }
+    }
+
+    WeightedSearch(Board initial, Heuristic heuristic, SolverStats stats) {
+        this.initial = initial;
+        this.heuristic = heuristic;
+        this.stats = stats;
+        lowerBound = stats.estimate(heuristic, initial);
+    }
+
+    // Fewest moves a solution can have, as proven so far
+    int lowerBound() {
+        return lowerBound;
+    }
+
+    // Did anytime search run out of time or budget, before it proved its
+    // best solution shortest?
+    boolean isTimedOut() {
+        return isTimedOut;
+    }
+
+    // Solution at most weight times as long as a shortest one. Initial
+    // board must be solvable.
+    MoveList solve(double weight) {
+        MoveList path = search(weight, Integer.MAX_VALUE);
+        lowerBound = Math.max(lowerBound,
+            (int) Math.ceil(path.size() * SCALE / (double) scaled(weight)));
+        return path;
+    }
+
+    // Shorter and shorter solutions, reported to listener, until budget or
+    // the SearchBudget runs out, or the best is a shortest one. Returns the
+    // best, or null if none was found in time. Initial board must be
+    // solvable.
+    MoveList anytime(long budgetNanos, Solver.SolutionListener listener) {
+        hasDeadline = true;
+        deadline = System.nanoTime() + budgetNanos;
+        MoveList best = null;
+        int cost = Integer.MAX_VALUE;
+        double weight = START_WEIGHT;
+        while (true) {
+            MoveList path;
+            try {
+                path = search(weight, cost);
+            } catch (SearchBudget.Exhausted e) {
+                isTimedOut = true;
+                return best;
+            }
+            if (isTimedOut) {
+                return best;
+            }
+            if (path == null) {
+                // nothing shorter than best exists
+                lowerBound = cost;
+            } else {
+                best = path;
+                cost = path.size();
+                lowerBound = Math.max(lowerBound,
+                    (int) Math.ceil(cost * SCALE / (double) scaled(weight)));
+                if (weight == 1) {
+                    lowerBound = cost;
+                }
+            }
+            stats.bound(lowerBound);
+            if (listener != null && path != null) {
+                listener.improved(best, lowerBound);
+            }
+            if (lowerBound >= cost) {
+                return best;
+            }
+            weight = Math.max(1, weight - WEIGHT_STEP);
+        }
+    }
+
+    // Weight in sixteenths, rounded down
+    private static int scaled(double weight) {
+        return (int) Math.floor(weight * SCALE);
+    }
+
+    // Weighted A*, pruning boards with g + h of bound or more. Returns null
+    // if no solution is below bound, or if time runs out.
+    private MoveList search(double weight, int bound) {
+        int w = scaled(weight);
+        if (!(weight >= 1) || w < SCALE) {
+            throw new IllegalArgumentException("Weight must be at least 1");
+        }
+        BucketQueue<Node> queue = new BucketQueue<Node>();
+        final StateTable closed = new StateTable();
+        int h0 = stats.estimate(heuristic, initial);
+        if (h0 >= bound) {
+            return null;
+        }
+        queue.insert(new Node(initial, 0), w * h0, w * h0);
+        closed.put(initial.key(), 0);
+        while (!queue.isEmpty()) {
+            Node node = queue.delMin();
+            Board board = node.board;
+            // skip boards since reached with fewer moves
+            if (closed.get(board.key()) != node.moves) {
+                continue;
+            }
+            if (board.isGoal()) {
+                return MoveList.backtrack(board, new ToIntFunction<Board>() {
+                    @Override
+                    public int applyAsInt(Board b) {
+                        return closed.get(b.key());
+                    }
+                });
+            }
+            stats.countExpanded();
+            if (hasDeadline
+                    && (stats.expanded() & (DEADLINE_CHECK_INTERVAL - 1)) == 0
+                    && System.nanoTime() - deadline >= 0) {
+                isTimedOut = true;
+                return null;
+            }
+            int moves = node.moves + 1;
+            for (Board neighbor : board.neighbors()) {
+                stats.countGenerated();
+                long key = neighbor.key();
+                int known = closed.get(key);
+                if (known != -1 && known <= moves) {
+                    stats.countDuplicate();
+                    continue;
+                }
+                int h = stats.estimate(heuristic, neighbor);
+                if (moves + h >= bound) {
+                    continue;
+                }
+                closed.put(key, moves);
+                queue.insert(new Node(neighbor, moves), moves * SCALE + w * h,
+                    w * h);
+            }
+            stats.open(queue.size());
+            stats.closed(closed.size());
+        }
+        return null;
+    }
+}
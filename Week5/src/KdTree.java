@@ -1,5 +1,8 @@
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import edu.princeton.cs.algs4.Point2D;
 import edu.princeton.cs.algs4.RectHV;
@@ -9,11 +12,31 @@ import edu.princeton.cs.algs4.StdDraw;
 // square. In general terms, KdTree is a K-dimensional space-partitioning data
 // structure, that enables effective range searches and nearest neighbor
 // searches. Here, KdTree uses a BST where points are nodes, and x- and y-
-// coordinates are used as keys as a strictly alternating sequence.
+// coordinates are used as keys as a strictly alternating sequence. Points
+// with equal key are ordered by their other coordinate, so that every point
+// has a strict place on one side of the splitting line.
+//
+// A tree of many points can be built at once, balanced: each subtree's root
+// is the median of its points by its key, found by quickselect, so building
+// takes O(n log n). Large subtrees are built in parallel, on the common
+// fork-join pool.
+//
+// Insertion keeps the tree balanced scapegoat style. Each node knows the size
+// of its subtree. When a point is inserted deeper than log base 1/ALPHA of
+// the tree size, there is an ancestor one of whose subtrees holds more than
+// ALPHA of its points, and that ancestor's subtree is rebuilt balanced. This
+// keeps depth O(log n) even for sorted or clustered points, at O(log^2 n)
+// amortized per insert, as a rebuild of k points takes O(k log k).
 //
 // http://coursera.cs.princeton.edu/algs4/assignments/kdtree.html
 // http://coursera.cs.princeton.edu/algs4/checklists/kdtree.html
 public final class KdTree {
+    // Largest share of a subtree's points in one of its subtrees, before
+    // insertion rebuilds it
+    private static final double ALPHA = 0.7;
+    // Subtrees smaller than this are built without forking
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
     private TreeSet<Node> nodes;
     private Node root;
 
@@ -53,6 +76,8 @@ public final class KdTree {
         private Node parent;
         private Node left;
         private Node right;
+        // Number of nodes in the subtree rooted at this node
+        private int size = 1;
 
         Node(Point2D p) {
             this.p = p;
@@ -69,6 +94,28 @@ public final class KdTree {
         nodes = new TreeSet<Node>();
     }
 
+    // Builds a balanced tree of points, skipping duplicates
+    public KdTree(Iterable<Point2D> points) {
+        this();
+        if (points == null) {
+            throw new IllegalArgumentException();
+        }
+        for (Point2D p : points) {
+            if (p == null) {
+                throw new IllegalArgumentException();
+            }
+            nodes.add(new Node(p));
+        }
+        if (!nodes.isEmpty()) {
+            root = build(nodes.toArray(new Node[nodes.size()]), null, null,
+                    Orientation.VERTICAL);
+        }
+    }
+
+    public KdTree(Point2D[] points) {
+        this(points == null ? null : Arrays.asList(points));
+    }
+
     public boolean isEmpty() {
         return nodes.isEmpty();
     }
@@ -83,7 +130,10 @@ public final class KdTree {
         }
 
         Node newNode = new Node(p);
-        nodes.add(newNode);
+        // Point is already in the tree
+        if (!nodes.add(newNode)) {
+            return;
+        }
 
         // If node is the first one, set up as root and return
         if (root == null) {
@@ -96,12 +146,14 @@ public final class KdTree {
 
         // Traverse tree to find correct position for the new node
         Node node = root;
+        int depth = 1;
         while (true) {
             Subtree subtree = detectSubtree(node, newNode.p);
             Node child = getChild(node, subtree);
             // if child exists, traverse subtree
             if (child != null) {
                 node = child;
+                depth++;
             // if child doesn't exist, place node
             } else {
                 child = newNode;
@@ -122,6 +174,205 @@ public final class KdTree {
                 break;
             }
         }
+        for (Node ancestor = node; ancestor != null;
+                ancestor = ancestor.parent) {
+            ancestor.size++;
+        }
+        if (depth > Math.log(nodes.size()) / Math.log(1 / ALPHA)) {
+            rebuild(scapegoat(newNode));
+        }
+    }
+
+    // Lowest ancestor of a node inserted too deep, with a subtree holding
+    // more than ALPHA of its points. There is always one, as otherwise the
+    // depth would be at most log base 1/ALPHA of the tree size.
+    private Node scapegoat(Node node) {
+        Node child = node;
+        Node ancestor = node.parent;
+        while (child.size <= ALPHA * ancestor.size
+                && ancestor.parent != null) {
+            child = ancestor;
+            ancestor = ancestor.parent;
+        }
+        return ancestor;
+    }
+
+    // Rebuilds the subtree rooted at node, balanced, in the same place
+    private void rebuild(Node node) {
+        Node[] subtree = new Node[node.size];
+        collect(node, subtree, 0);
+        Node parent = node.parent;
+        if (parent == null) {
+            root = build(subtree, null, null, node.orientation);
+        } else if (parent.left == node) {
+            parent.left = build(subtree, parent, Subtree.LEFT,
+                    node.orientation);
+        } else {
+            parent.right = build(subtree, parent, Subtree.RIGHT,
+                    node.orientation);
+        }
+    }
+
+    // Puts the nodes of subtree into array from index i, returns next index
+    private static int collect(Node subtree, Node[] array, int i) {
+        if (subtree == null) {
+            return i;
+        }
+        array[i++] = subtree;
+        i = collect(subtree.left, array, i);
+        return collect(subtree.right, array, i);
+    }
+
+    // Links nodes into a balanced subtree, on subtree side of parent, or as
+    // the root if parent is null. Returns its root.
+    private Node build(Node[] subtree, Node parent, Subtree side,
+            Orientation orientation) {
+        Build build = new Build(subtree, 0, subtree.length, parent, side,
+                orientation);
+        if (subtree.length < PARALLEL_THRESHOLD) {
+            return build.compute();
+        }
+        return ForkJoinPool.commonPool().invoke(build);
+    }
+
+    // Builds the subtree of nodes lo to hi - 1. Its root is the median by
+    // orientation, with smaller nodes in its left subtree and greater ones
+    // in its right, which are built the same way, in parallel if large.
+    private final class Build extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+
+        private final Node[] array;
+        private final int lo;
+        private final int hi;
+        private final Node parent;
+        private final Subtree side;
+        private final Orientation orientation;
+
+        Build(Node[] array, int lo, int hi, Node parent, Subtree side,
+                Orientation orientation) {
+            this.array = array;
+            this.lo = lo;
+            this.hi = hi;
+            this.parent = parent;
+            this.side = side;
+            this.orientation = orientation;
+        }
+
+        @Override
+        protected Node compute() {
+            if (lo == hi) {
+                return null;
+            }
+            int mid = (lo + hi) >>> 1;
+            select(array, lo, hi - 1, mid, orientation);
+            Node node = array[mid];
+            node.parent = parent;
+            node.orientation = orientation;
+            node.size = hi - lo;
+            if (parent == null) {
+                node.rect = new RectHV(0, 0, 1, 1);
+            } else {
+                node.rect = rectFor(node, side);
+            }
+            Orientation next = other(orientation);
+            Build left = new Build(array, lo, mid, node, Subtree.LEFT, next);
+            Build right = new Build(array, mid + 1, hi, node, Subtree.RIGHT,
+                    next);
+            if (hi - lo < PARALLEL_THRESHOLD) {
+                node.left = left.compute();
+                node.right = right.compute();
+            } else {
+                left.fork();
+                node.right = right.compute();
+                node.left = left.join();
+            }
+            return node;
+        }
+    }
+
+    private static Orientation other(Orientation orientation) {
+        if (orientation == Orientation.VERTICAL) {
+            return Orientation.HORIZONTAL;
+        }
+        return Orientation.VERTICAL;
+    }
+
+    // Quickselect: rearranges a[lo..hi] so that a[k] is the node that
+    // belongs there in order of orientation, with smaller nodes before it
+    // and greater ones after it. Pivot is the median of three, so sorted
+    // points take linear time too.
+    private static void select(Node[] a, int lo, int hi, int k,
+            Orientation orientation) {
+        while (hi > lo) {
+            int j = partition(a, lo, hi, orientation);
+            if (j < k) {
+                lo = j + 1;
+            } else if (j > k) {
+                hi = j - 1;
+            } else {
+                return;
+            }
+        }
+    }
+
+    // Partitions a[lo..hi] around a pivot, returns its index
+    private static int partition(Node[] a, int lo, int hi,
+            Orientation orientation) {
+        int mid = (lo + hi) >>> 1;
+        if (compare(a[mid].p, a[lo].p, orientation) < 0) {
+            swap(a, mid, lo);
+        }
+        if (compare(a[hi].p, a[lo].p, orientation) < 0) {
+            swap(a, hi, lo);
+        }
+        if (compare(a[hi].p, a[mid].p, orientation) < 0) {
+            swap(a, hi, mid);
+        }
+        // median of three is now at mid, move it to lo as pivot
+        swap(a, lo, mid);
+        Point2D pivot = a[lo].p;
+        int i = lo;
+        int j = hi + 1;
+        while (true) {
+            while (compare(a[++i].p, pivot, orientation) < 0) {
+                if (i == hi) {
+                    break;
+                }
+            }
+            while (compare(pivot, a[--j].p, orientation) < 0) {
+                if (j == lo) {
+                    break;
+                }
+            }
+            if (i >= j) {
+                break;
+            }
+            swap(a, i, j);
+        }
+        swap(a, lo, j);
+        return j;
+    }
+
+    private static void swap(Node[] a, int i, int j) {
+        Node t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    // Compares points by the key of orientation, then by the other
+    // coordinate
+    private static int compare(Point2D p, Point2D q,
+            Orientation orientation) {
+        if (orientation == Orientation.VERTICAL) {
+            if (p.x() != q.x()) {
+                return Double.compare(p.x(), q.x());
+            }
+            return Double.compare(p.y(), q.y());
+        }
+        if (p.y() != q.y()) {
+            return Double.compare(p.y(), q.y());
+        }
+        return Double.compare(p.x(), q.x());
     }
 
     // Creates spanning rectangle for a node's subtree.
@@ -151,12 +402,7 @@ public final class KdTree {
 
     // To which Subtree  should the new point be placed?
     private Subtree detectSubtree(Node node, Point2D p) {
-        if (node.orientation == Orientation.VERTICAL
-                && (p.x() < node.p.x())) {
-            return Subtree.LEFT;
-        }
-        if (node.orientation == Orientation.HORIZONTAL
-                && (p.y() < node.p.y())) {
+        if (compare(p, node.p, node.orientation) < 0) {
             return Subtree.LEFT;
         }
         return Subtree.RIGHT;
@@ -358,6 +604,14 @@ public final class KdTree {
         return ((subtree != null) && (subtree.rect.distanceTo(p)) < distance);
     }
 
+    // Number of nodes on the longest path down from subtree
+    private static int height(Node subtree) {
+        if (subtree == null) {
+            return 0;
+        }
+        return 1 + Math.max(height(subtree.left), height(subtree.right));
+    }
+
     private static void testBasic() {
         System.out.println("Create new KdTree object");
         KdTree kdTree = new KdTree();
@@ -458,10 +712,35 @@ public final class KdTree {
         System.out.println(kdTree.nearest(new Point2D(0.5, 0.4)));
     }
 
+    private static void testBalance() {
+        System.out.println("Test balance");
+        int n = 100000;
+        Point2D[] points = new Point2D[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = new Point2D((double) i / n, 0.5);
+        }
+        KdTree inserted = new KdTree();
+        for (Point2D p : points) {
+            inserted.insert(p);
+        }
+        KdTree built = new KdTree(points);
+        System.out.println("Height of sorted inserts, should be at most "
+                + ((int) (Math.log(n) / Math.log(1 / ALPHA)) + 1) + ": "
+                + height(inserted.root));
+        System.out.println("Height of bulk build, should be "
+                + (32 - Integer.numberOfLeadingZeros(n)) + ": "
+                + height(built.root));
+        System.out.println("Nearest for (0.25, 0.4) should be (0.25, 0.5)");
+        System.out.println(built.nearest(new Point2D(0.25, 0.4)));
+        System.out.println("Contains (0.5, 0.5) -> "
+                + inserted.contains(new Point2D(0.5, 0.5)));
+    }
+
     public static void main(String[] args) {
         testBasic();
         testInsert();
         testRange();
         testNearest();
+        testBalance();
     }
 }